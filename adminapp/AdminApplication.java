@@ -1,8 +1,5 @@
 package adminapp;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.util.Scanner;
 
 /**
@@ -20,25 +17,23 @@ public class AdminApplication {
     /**
      * Runs the admin application. It establishes a connection with the server, displays the admin menu,
      * reads user input, sends the command to the server, and processes the response.
+     * The same connection is used for every command.
      */
     public void run() {
         System.out.println("Welcome, Admin!");
 
-        Socket socket = null;
-        PrintWriter writer = null;
+        AdminClient client = null;
         Scanner scanner = null;
 
         try {
-            socket = new Socket(SERVER_ADDRESS, SERVER_PORT);
-            writer = new PrintWriter(socket.getOutputStream(), true);
+            client = new AdminClient(SERVER_ADDRESS, SERVER_PORT);
             scanner = new Scanner(System.in);
 
             String command;
             do {
                 displayAdminMenu();
                 command = scanner.nextLine();
-                sendCommand(writer, command);
-                processResponse(socket.getInputStream()); // Pass the input stream to processResponse()
+                processResponse(sendCommand(client, command));
             } while (!command.equals("Q")); // Repeat until the user chooses to quit
         } 
         catch (IOException e) {
@@ -49,12 +44,9 @@ public class AdminApplication {
             if (scanner != null) {
                 scanner.close();
             }
-            if (writer != null) {
-                writer.close();
-            }
-            if (socket != null) {
+            if (client != null) {
                 try {
-                    socket.close();
+                    client.close();
                 } 
                 catch (IOException e) {
                     e.printStackTrace();
@@ -70,30 +62,32 @@ public class AdminApplication {
         System.out.println("What would you like to do?");
         System.out.println("U - Update Store Inventory");
         System.out.println("R - Retrieve Salable Products");
+        System.out.println("S - Save Inventory Snapshot");
+        System.out.println("P <json> - Patch Products, e.g. P [{\"op\": \"adjust\", \"name\": \"Sword\", \"delta\": 5}]");
+        System.out.println("M - Show Command Metrics");
         System.out.println("Q - Quit");
     }
 
     /**
-     * Sends the admin command to the server.
+     * Sends the admin command to the server and waits for its response.
      *
-     * @param writer  the PrintWriter used to send data to the server
+     * @param client  the connection to the server
      * @param command the admin command to send
+     * @return the server's response
+     * @throws IOException if the connection fails
      */
-    private void sendCommand(PrintWriter writer, String command) {
-        writer.println(command);
+    private String sendCommand(AdminClient client, String command) throws IOException {
+        return client.send(command);
     }
 
    /**
     * Processes the response received from the server and prints it to the console.
     *
-    * @param socket the Socket representing the server connection
-    * @throws IOException if an I/O error occurs while processing the response
+    * @param response the response received from the server
     */
-    private void processResponse(InputStream inputStream) {
-        Scanner scanner = new Scanner(inputStream);
-        while (scanner.hasNextLine()) {
-            String response = scanner.nextLine();
-            System.out.println("Response: " + response.toUpperCase());
+    private void processResponse(String response) {
+        for (String line : response.split("\n")) {
+            System.out.println("Response: " + line);
         }
     }
 
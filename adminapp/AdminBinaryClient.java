@@ -0,0 +1,157 @@
+package adminapp;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import storeapp.InventoryPatch;
+import storeapp.InventorySnapshot;
+import storeapp.SalableProduct;
+
+/**
+ * The AdminBinaryClient class keeps one connection to the AdministrationService open and talks to it
+ * with the binary protocol ({@link AdminBinaryProtocol}), which moves products without any JSON.
+ * It suits programs doing bulk work such as large restocks or full retrievals; {@link AdminClient}
+ * remains the client for the text protocol.
+ * An AdminBinaryClient is not thread-safe.
+ *
+ * @author rargueta
+ */
+public class AdminBinaryClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+
+    /**
+     * Connects to the admin service and switches the connection to the binary protocol.
+     *
+     * @param host the host running the store
+     * @param port the admin port
+     * @throws IOException if the connection cannot be made or the server does not speak the binary protocol
+     */
+    public AdminBinaryClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            out.write(AdminBinaryProtocol.HELLO);
+            out.flush();
+            if (in.read() != (AdminBinaryProtocol.MAGIC & 0xFF)) {
+                throw new IOException("The admin service does not speak the binary protocol");
+            }
+            AdminBinaryProtocol.readHello(in);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a text command, such as S, and returns its response.
+     *
+     * @param command the command line
+     * @return the response text
+     * @throws IOException if the connection fails
+     */
+    public String command(String command) throws IOException {
+        AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.OP_COMMAND, command.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return readMessage(readFrame());
+    }
+
+    /**
+     * Retrieves products, passing each one to the consumer as it arrives.
+     *
+     * @param filter the filter and page as JSON (see {@link RetrieveFilter}), or null for every product
+     * @param consumer the consumer receiving the products in name order
+     * @return the cursor for the next page, or null if this was the last page
+     * @throws IOException if the connection fails or the server rejects the filter
+     */
+    public String retrieve(String filter, Consumer<SalableProduct> consumer) throws IOException {
+        byte[] payload = filter == null ? new byte[0] : filter.getBytes(StandardCharsets.UTF_8);
+        AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.OP_RETRIEVE, payload);
+        out.flush();
+        AdminBinaryProtocol.Frame frame;
+        while ((frame = readFrame()).getCode() == AdminBinaryProtocol.STATUS_PRODUCTS) {
+            byte[] products = frame.getPayload();
+            ByteArrayInputStream batch = new ByteArrayInputStream(products);
+            DataInputStream batchIn = new DataInputStream(batch);
+            while (batch.available() > 0) {
+                SalableProduct product = InventorySnapshot.readProduct(batchIn);
+                if (product == null) {
+                    // Unknown types carry no length, so nothing after one can be read
+                    throw new IOException("Unknown product type from the admin service");
+                }
+                consumer.accept(product);
+            }
+        }
+        if (frame.getCode() == AdminBinaryProtocol.STATUS_ERROR) {
+            throw new IOException(new String(frame.getPayload(), StandardCharsets.UTF_8));
+        }
+        return frame.getPayload().length == 0 ? null : new String(frame.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies a patch, for example a large restock, as one atomic change.
+     *
+     * @param patch the patch
+     * @return the response text, "Patch applied: n changes." or the reason the patch was rejected
+     * @throws IOException if the connection fails
+     */
+    public String patch(InventoryPatch patch) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        patch.write(new DataOutputStream(payload));
+        AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.OP_PATCH, payload.toByteArray());
+        out.flush();
+        return readMessage(readFrame());
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return the frame
+     * @throws IOException if the connection fails or is closed by the server
+     */
+    private AdminBinaryProtocol.Frame readFrame() throws IOException {
+        AdminBinaryProtocol.Frame frame = AdminBinaryProtocol.readFrame(in);
+        if (frame == null) {
+            throw new IOException("The admin service closed the connection");
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the message of a response that ends a request.
+     *
+     * @param frame the frame
+     * @return the message
+     * @throws IOException if the frame does not end a request
+     */
+    private static String readMessage(AdminBinaryProtocol.Frame frame) throws IOException {
+        if (frame.getCode() != AdminBinaryProtocol.STATUS_OK && frame.getCode() != AdminBinaryProtocol.STATUS_ERROR) {
+            throw new IOException("Unexpected response status: " + frame.getCode());
+        }
+        return new String(frame.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,175 @@
+package adminapp;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The AdminBinaryProtocol class holds the binary wire format of the admin service, an alternative to the
+ * text protocol in {@link AdminProtocol} for programs moving large amounts of inventory.
+ *
+ * A client selects it by sending the four bytes of {@link #HELLO} as soon as it connects; the server echoes
+ * them back and from then on both sides exchange frames. The first byte of the hello is not valid UTF-8,
+ * so it can never start a text command. Each frame is an int length followed by that many bytes: a code
+ * byte and the payload. Requests carry an opcode, responses a status:
+ * <ul>
+ * <li>{@link #OP_COMMAND}: the payload is a text command in UTF-8, answered with its text response.</li>
+ * <li>{@link #OP_RETRIEVE}: the payload is an optional {@link RetrieveFilter} in UTF-8 JSON. The products are
+ * sent in any number of {@link #STATUS_PRODUCTS} frames, each holding products encoded as in
+ * {@link storeapp.InventorySnapshot#writeProduct(java.io.DataOutput, storeapp.SalableProduct)}, followed by
+ * a {@link #STATUS_OK} frame holding the "next" page cursor (empty on the last page).</li>
+ * <li>{@link #OP_PATCH}: the payload is an {@link storeapp.InventoryPatch} in its binary form.</li>
+ * </ul>
+ * Every request ends with exactly one {@link #STATUS_OK} or {@link #STATUS_ERROR} frame, and, as in
+ * the text protocol, requests may be pipelined.
+ *
+ * @author rargueta
+ */
+public final class AdminBinaryProtocol {
+
+    /**
+     * The first byte of the hello, which tells the server the connection uses this protocol.
+     */
+    static final byte MAGIC = (byte) 0xFA;
+
+    /**
+     * The protocol version sent in the hello.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * The bytes a client sends on connecting, and the server echoes to accept: the magic byte, "AB" and the version.
+     */
+    static final byte[] HELLO = {MAGIC, 'A', 'B', VERSION};
+
+    /** Runs a text command. */
+    public static final byte OP_COMMAND = 0;
+    /** Retrieves products. */
+    public static final byte OP_RETRIEVE = 1;
+    /** Applies an inventory patch. */
+    public static final byte OP_PATCH = 2;
+
+    /** The request succeeded; the payload is a UTF-8 message. Ends the response. */
+    public static final byte STATUS_OK = 0;
+    /** The request failed; the payload is a UTF-8 message. Ends the response. */
+    public static final byte STATUS_ERROR = 1;
+    /** Part of a product listing; more frames follow. */
+    public static final byte STATUS_PRODUCTS = 2;
+
+    /**
+     * The longest frame either side accepts.
+     */
+    static final int MAX_FRAME_LENGTH = 64 << 20;
+
+    private AdminBinaryProtocol() {
+
+    }
+
+    /**
+     * One request or response frame.
+     */
+    public static final class Frame {
+        private final byte code;
+        private final byte[] payload;
+
+        Frame(byte code, byte[] payload) {
+            this.code = code;
+            this.payload = payload;
+        }
+
+        /**
+         * Returns the opcode of a request or the status of a response.
+         * @return the code
+         */
+        public byte getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the payload.
+         * @return the payload bytes
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Writes one frame. The caller flushes the stream when it wants the frame sent.
+     *
+     * @param out the stream to write to
+     * @param code the opcode or status
+     * @param payload the payload
+     * @param offset the start of the payload in the array
+     * @param length the length of the payload
+     * @throws IOException if the frame cannot be written
+     */
+    public static void writeFrame(OutputStream out, byte code, byte[] payload, int offset, int length) throws IOException {
+        int frameLength = length + 1;
+        out.write(new byte[] {(byte) (frameLength >>> 24), (byte) (frameLength >>> 16), (byte) (frameLength >>> 8), (byte) frameLength, code});
+        out.write(payload, offset, length);
+    }
+
+    /**
+     * Writes one frame. The caller flushes the stream when it wants the frame sent.
+     *
+     * @param out the stream to write to
+     * @param code the opcode or status
+     * @param payload the payload
+     * @throws IOException if the frame cannot be written
+     */
+    public static void writeFrame(OutputStream out, byte code, byte[] payload) throws IOException {
+        writeFrame(out, code, payload, 0, payload.length);
+    }
+
+    /**
+     * Reads one frame.
+     *
+     * @param in the stream to read from
+     * @return the frame, or null if the stream ended before a new frame
+     * @throws IOException if the frame cannot be read or is malformed
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedShort());
+        checkLength(length);
+        byte code = in.readByte();
+        byte[] payload = new byte[length - 1];
+        in.readFully(payload);
+        return new Frame(code, payload);
+    }
+
+    /**
+     * Checks the length in a frame header.
+     *
+     * @param length the length of the code and payload
+     * @throws IOException if the length is out of range
+     */
+    static void checkLength(int length) throws IOException {
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Malformed frame length: " + length);
+        }
+    }
+
+    /**
+     * Reads the rest of a hello whose magic byte has been read, and checks it.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the hello is not one this version speaks
+     */
+    static void readHello(InputStream in) throws IOException {
+        for (int i = 1; i < HELLO.length; i++) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException("Connection closed in the middle of the hello");
+            }
+            if ((byte) next != HELLO[i]) {
+                throw new IOException("Unsupported binary protocol hello");
+            }
+        }
+    }
+}
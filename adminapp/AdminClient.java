@@ -0,0 +1,121 @@
+package adminapp;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The AdminClient class keeps one connection to the AdministrationService open and sends commands over it.
+ * Commands can be sent one at a time with {@link #send(String)}, or pipelined with {@link #sendAll(List)},
+ * which writes a window of commands before reading their replies.
+ * An AdminClient is not thread-safe.
+ *
+ * @author rargueta
+ */
+public class AdminClient implements Closeable {
+
+    /**
+     * How many commands are sent ahead of their replies. Bounding this keeps both sides from blocking
+     * on full socket buffers when a long batch of commands with large replies is pipelined.
+     */
+    private static final int PIPELINE_WINDOW = 128;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Connects to the admin service.
+     *
+     * @param host the host running the store
+     * @param port the admin port
+     * @throws IOException if the connection cannot be made
+     */
+    public AdminClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+        out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+    }
+
+    /**
+     * Sends one command and waits for its response.
+     *
+     * @param command the command line
+     * @return the response text
+     * @throws IOException if the connection fails or is closed by the server
+     */
+    public String send(String command) throws IOException {
+        AdminProtocol.writeCommand(out, command);
+        out.flush();
+        return readResponse();
+    }
+
+    /**
+     * Sends one command and copies its response to the given stream as it arrives, so that large
+     * streamed responses need not be held in memory.
+     *
+     * @param command the command line
+     * @param sink the stream receiving the response body
+     * @throws IOException if the connection fails or is closed by the server
+     */
+    public void send(String command, OutputStream sink) throws IOException {
+        AdminProtocol.writeCommand(out, command);
+        out.flush();
+        if (!AdminProtocol.readResponse(in, sink)) {
+            throw new IOException("The admin service closed the connection");
+        }
+    }
+
+    /**
+     * Sends the commands without waiting for each reply and returns the responses in order.
+     * Up to {@value #PIPELINE_WINDOW} commands are in flight at a time.
+     *
+     * @param commands the command lines
+     * @return the responses, one per command
+     * @throws IOException if the connection fails or is closed by the server
+     */
+    public List<String> sendAll(List<String> commands) throws IOException {
+        List<String> responses = new ArrayList<>(commands.size());
+        for (int start = 0; start < commands.size(); start += PIPELINE_WINDOW) {
+            int end = Math.min(start + PIPELINE_WINDOW, commands.size());
+            for (String command : commands.subList(start, end)) {
+                AdminProtocol.writeCommand(out, command);
+            }
+            out.flush();
+            for (int i = start; i < end; i++) {
+                responses.add(readResponse());
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Reads the next response.
+     *
+     * @return the response text
+     * @throws IOException if the connection fails or is closed by the server
+     */
+    private String readResponse() throws IOException {
+        String response = AdminProtocol.readResponse(in);
+        if (response == null) {
+            throw new IOException("The admin service closed the connection");
+        }
+        return response;
+    }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,73 @@
+package adminapp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The AdminMetrics class keeps a latency histogram, a count and an error count for every admin command
+ * and for the inventory operations they run, and formats them for the M command.
+ *
+ * @author rargueta
+ */
+final class AdminMetrics {
+
+    /**
+     * The metrics of one command or operation.
+     */
+    private static final class Metric {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Records one run of a command or operation.
+     *
+     * @param name the name of the command or operation; callers keep the set of names small
+     * @param nanos how long it took
+     * @param error whether it failed
+     */
+    void record(String name, long nanos, boolean error) {
+        Metric metric = metrics.computeIfAbsent(name, key -> new Metric());
+        metric.latency.record(nanos);
+        if (error) {
+            metric.errors.increment();
+        }
+    }
+
+    /**
+     * Returns the latency histogram of a command or operation.
+     *
+     * @param name the name of the command or operation
+     * @return the histogram, or null if it has not run yet
+     */
+    LatencyHistogram getLatency(String name) {
+        Metric metric = metrics.get(name);
+        return metric != null ? metric.latency : null;
+    }
+
+    /**
+     * Formats every metric as a table: the count, errors and rate since the service started, and
+     * the p50, p99, p999 and maximum latencies in microseconds.
+     *
+     * @return the report
+     */
+    String report() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Uptime %.0f s; latencies in microseconds.%n", seconds));
+        report.append(String.format("%-24s %10s %8s %10s %10s %10s %10s %10s%n",
+                "name", "count", "errors", "rate/s", "p50", "p99", "p999", "max"));
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long count = latency.getCount();
+            report.append(String.format("%-24s %10d %8d %10.2f %10.1f %10.1f %10.1f %10.1f%n",
+                    entry.getKey(), count, entry.getValue().errors.sum(), count / seconds,
+                    latency.getPercentile(0.5) / 1e3, latency.getPercentile(0.99) / 1e3,
+                    latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3));
+        }
+        return report.toString();
+    }
+}
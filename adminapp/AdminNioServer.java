@@ -0,0 +1,631 @@
+package adminapp;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AdminNioServer class serves the admin protocol without blocking on any one client.
+ * A single selector thread accepts connections and reads and writes them as they become ready;
+ * complete command lines are handed to a small worker pool, which runs them through
+ * {@link AdministrationService#openResponse(String)} and passes the response back to the
+ * selector thread in chunks. Each connection buffers about {@value #MAX_QUEUED_BYTES} bytes of unsent
+ * response at most: a worker writing a large response stops once that much is waiting and goes on to other
+ * connections, and the selector thread hands the rest of the response to a worker again once the client has
+ * read half of it, so a client that does not read never holds a worker.
+ * Connections stay open for any number of pipelined commands (see {@link AdminProtocol}), and switch to
+ * {@link AdminBinaryProtocol} if they open with its hello. The commands of one
+ * connection run one after another, so their responses go out in order, while different connections run in parallel.
+ *
+ * @author rargueta
+ */
+final class AdminNioServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * The longest command line or request frame accepted, which bounds the memory an unterminated line can use.
+     * Only patches get long, and a patch of several thousand operations fits; larger changes are sent as
+     * several patches or loaded from a file with U.
+     */
+    private static final int MAX_COMMAND_LENGTH = 1 << 20;
+
+    /**
+     * How many received commands a connection may have waiting before the server stops reading from it.
+     */
+    private static final int MAX_QUEUED_COMMANDS = 1024;
+
+    /**
+     * How many bytes of received commands a connection may have waiting before the server stops reading from it.
+     */
+    private static final int MAX_QUEUED_COMMAND_BYTES = MAX_COMMAND_LENGTH;
+
+    /**
+     * How many response bytes a connection may have waiting to be sent before the worker writing them stops.
+     */
+    private static final int MAX_QUEUED_BYTES = 1 << 20;
+
+    /**
+     * The size of the pieces a worker hands response bytes to the selector thread in.
+     */
+    private static final int OUTPUT_CHUNK_SIZE = 64 * 1024;
+
+    private final AdministrationService service;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+
+    /**
+     * Connections whose current command has finished, handed from the workers to the selector thread.
+     */
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Connections that have new response bytes to send, handed from the workers to the selector thread.
+     */
+    private final Queue<Connection> flushed = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * The state of one client connection. Only the selector thread touches it, except for the
+     * response bytes, which the worker running the connection's current command adds to {@link #outputs},
+     * and the response itself, which that worker hands back through {@link #completed}.
+     */
+    private static final class Connection {
+        final SelectionKey key;
+        ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int scanned;
+
+        /** Commands waiting to run; text commands are held as {@link AdminBinaryProtocol#OP_COMMAND} frames. */
+        final Queue<AdminBinaryProtocol.Frame> commands = new ArrayDeque<>();
+
+        /** The number of payload bytes in {@link #commands}. */
+        int queuedCommandBytes;
+        final Queue<ByteBuffer> outputs = new ConcurrentLinkedQueue<>();
+
+        /** The number of response bytes in {@link #outputs}. */
+        final AtomicLong queuedBytes = new AtomicLong();
+
+        /** The stream the connection's responses are written to, used by one worker at a time. */
+        ConnectionOutputStream out;
+
+        /** The response being written, kept while it waits for the client to read what was sent of it. */
+        AdministrationService.PartialResponse response;
+
+        /** Whether the connection has been closed, so workers stop writing to it. */
+        volatile boolean closed;
+
+        /** Set by a worker whose command failed partway through a streamed response, which cannot be framed any more. */
+        volatile boolean failed;
+
+        /** Whether the first bytes have been read, which tell the text and binary protocols apart. */
+        boolean negotiated;
+
+        /** Whether the connection speaks {@link AdminBinaryProtocol}. */
+        boolean binary;
+
+        /** Whether a worker is running one of this connection's commands or writing part of its response. */
+        boolean busy;
+
+        /** Whether no more commands will be read, because the client shut down its side or sent Q. */
+        boolean inputClosed;
+
+        Connection(SelectionKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The stream a worker writes a response to. Bytes are passed to the selector thread in chunks;
+     * {@link #isFull()} tells the response when to stop writing, and writing never blocks.
+     */
+    private final class ConnectionOutputStream extends OutputStream {
+        private final Connection connection;
+        private byte[] buffer = new byte[OUTPUT_CHUNK_SIZE];
+        private int count;
+        private boolean written;
+
+        ConnectionOutputStream(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        /**
+         * Returns whether the connection has {@value #MAX_QUEUED_BYTES} bytes waiting to be sent,
+         * counting those not yet passed to the selector thread.
+         *
+         * @return true if the response should stop writing
+         */
+        boolean isFull() {
+            return connection.queuedBytes.get() + count >= MAX_QUEUED_BYTES;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (connection.closed) {
+                throw new IOException("Connection closed");
+            }
+            connection.queuedBytes.addAndGet(count);
+            connection.outputs.add(ByteBuffer.wrap(buffer, 0, count));
+            written = true;
+            buffer = new byte[OUTPUT_CHUNK_SIZE];
+            count = 0;
+            flushed.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Binds the server socket and creates the worker pool.
+     *
+     * @param service the service that runs the commands
+     * @param port the port to listen on, or 0 for any free port
+     * @param workerCount the number of threads running commands
+     * @throws IOException if the port cannot be bound
+     */
+    AdminNioServer(AdministrationService service, int port, int workerCount) throws IOException {
+        this.service = service;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "admin-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::run, "admin-selector");
+    }
+
+    /**
+     * Starts serving connections on the selector thread.
+     */
+    void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return the local port
+     */
+    int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * The selector loop: dispatches ready channels until the server is closed.
+     */
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (Connection connection = completed.poll(); connection != null; connection = completed.poll()) {
+                    if (connection.failed) {
+                        closeConnection(connection.key);
+                    }
+                    else if (connection.key.isValid()) {
+                        connection.busy = false;
+                        dispatch(connection);
+                    }
+                }
+                for (Connection connection = flushed.poll(); connection != null; connection = flushed.poll()) {
+                    if (connection.key.isValid()) {
+                        dispatch(connection);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Accepts a pending connection and starts reading its commands.
+     *
+     * @throws IOException if the connection cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(key);
+        connection.out = new ConnectionOutputStream(connection);
+        key.attach(connection);
+    }
+
+    /**
+     * Reads what a client has sent and queues every complete command line.
+     *
+     * @param key the key of the readable connection
+     * @throws IOException if the connection cannot be read
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.input) < 0) {
+            // The client may have shut down its side after pipelining; answer what it sent first
+            connection.inputClosed = true;
+            dispatch(connection);
+            return;
+        }
+        ByteBuffer input = connection.input;
+        if (!connection.negotiated) {
+            if (input.position() == 0) {
+                // Nothing to tell the protocols apart by yet
+                return;
+            }
+            if (input.get(0) == AdminBinaryProtocol.MAGIC) {
+                if (input.position() < AdminBinaryProtocol.HELLO.length) {
+                    return;
+                }
+                for (int i = 1; i < AdminBinaryProtocol.HELLO.length; i++) {
+                    if (input.get(i) != AdminBinaryProtocol.HELLO[i]) {
+                        closeConnection(key);
+                        return;
+                    }
+                }
+                connection.binary = true;
+                queueOutput(connection, AdminBinaryProtocol.HELLO.clone());
+            }
+            connection.negotiated = true;
+            if (connection.binary) {
+                input.flip();
+                input.position(AdminBinaryProtocol.HELLO.length);
+                input.compact();
+            }
+        }
+        int consumed = connection.binary ? takeFrames(connection) : takeLines(connection);
+        if (consumed > 0) {
+            // Drop the commands that were taken and keep the start of the next one
+            input.flip();
+            input.position(consumed);
+            input.compact();
+        }
+        connection.scanned = input.position();
+        if (!input.hasRemaining() && !connection.inputClosed) {
+            if (input.capacity() >= MAX_COMMAND_LENGTH) {
+                rejectCommand(connection, "Command too long.");
+            }
+            else {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(input.capacity() * 2, MAX_COMMAND_LENGTH));
+                input.flip();
+                larger.put(input);
+                connection.input = larger;
+            }
+        }
+        dispatch(connection);
+    }
+
+    /**
+     * Takes the complete command lines out of a text connection's input buffer.
+     *
+     * @param connection the connection
+     * @return the number of bytes taken
+     */
+    private int takeLines(Connection connection) {
+        ByteBuffer input = connection.input;
+        int lineStart = 0;
+        for (int i = connection.scanned; i < input.position(); i++) {
+            if (input.get(i) == '\n') {
+                int end = i > lineStart && input.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] command = new byte[end - lineStart];
+                input.get(lineStart, command);
+                lineStart = i + 1;
+                connection.commands.add(new AdminBinaryProtocol.Frame(AdminBinaryProtocol.OP_COMMAND, command));
+                connection.queuedCommandBytes += command.length;
+                if (isQuit(command)) {
+                    connection.inputClosed = true;
+                    break;
+                }
+            }
+        }
+        return lineStart;
+    }
+
+    /**
+     * Takes the complete frames out of a binary connection's input buffer.
+     *
+     * @param connection the connection
+     * @return the number of bytes taken
+     */
+    private int takeFrames(Connection connection) {
+        ByteBuffer input = connection.input;
+        int frameStart = 0;
+        while (input.position() - frameStart >= 4) {
+            int length = input.getInt(frameStart);
+            if (length < 1 || length > MAX_COMMAND_LENGTH - 4) {
+                rejectCommand(connection, "Malformed frame length: " + length);
+                break;
+            }
+            if (input.position() - frameStart - 4 < length) {
+                break;
+            }
+            byte[] payload = new byte[length - 1];
+            input.get(frameStart + 5, payload);
+            byte opcode = input.get(frameStart + 4);
+            frameStart += 4 + length;
+            connection.commands.add(new AdminBinaryProtocol.Frame(opcode, payload));
+            connection.queuedCommandBytes += payload.length;
+            if (opcode == AdminBinaryProtocol.OP_COMMAND && isQuit(payload)) {
+                connection.inputClosed = true;
+                break;
+            }
+        }
+        return frameStart;
+    }
+
+    /**
+     * Returns whether a text command is Q, after which the connection is closed.
+     *
+     * @param command the command in UTF-8
+     * @return true for Q
+     */
+    private static boolean isQuit(byte[] command) {
+        return command.length == 1 && command[0] == 'Q';
+    }
+
+    /**
+     * Answers a command that cannot be read with an error, drops the commands still waiting and
+     * stops reading, so the connection is closed once the error has been sent.
+     *
+     * @param connection the connection
+     * @param message the error message
+     */
+    private void rejectCommand(Connection connection, String message) {
+        byte[] response;
+        if (connection.binary) {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            try {
+                AdminBinaryProtocol.writeFrame(frame, AdminBinaryProtocol.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            response = frame.toByteArray();
+        }
+        else {
+            response = AdminProtocol.encodeResponse(message);
+        }
+        connection.commands.clear();
+        connection.queuedCommandBytes = 0;
+        connection.inputClosed = true;
+        queueOutput(connection, response);
+    }
+
+    /**
+     * Queues bytes to be sent from the selector thread.
+     *
+     * @param connection the connection
+     * @param bytes the bytes to send
+     */
+    private static void queueOutput(Connection connection, byte[] bytes) {
+        connection.queuedBytes.addAndGet(bytes.length);
+        connection.outputs.add(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Hands the rest of the connection's current response, or else its next command, to a worker if none
+     * is running, updates which events the connection waits for, and closes it once everything it asked
+     * for has been answered. A response that stopped because the client was not reading is only carried
+     * on once the client has read half of what was waiting.
+     *
+     * @param connection the connection
+     */
+    private void dispatch(Connection connection) {
+        if (!connection.busy) {
+            if (connection.response != null) {
+                if (connection.queuedBytes.get() <= MAX_QUEUED_BYTES / 2) {
+                    connection.busy = true;
+                    workers.execute(() -> respond(connection, null));
+                }
+            }
+            else if (!connection.commands.isEmpty()) {
+                AdminBinaryProtocol.Frame command = connection.commands.poll();
+                connection.queuedCommandBytes -= command.getPayload().length;
+                connection.busy = true;
+                workers.execute(() -> respond(connection, command));
+            }
+        }
+        if (connection.inputClosed && !connection.busy && connection.response == null
+                && connection.commands.isEmpty() && connection.outputs.isEmpty()) {
+            closeConnection(connection.key);
+            return;
+        }
+        int interest = 0;
+        if (!connection.inputClosed && connection.commands.size() < MAX_QUEUED_COMMANDS
+                && connection.queuedCommandBytes < MAX_QUEUED_COMMAND_BYTES) {
+            interest |= SelectionKey.OP_READ;
+        }
+        if (!connection.outputs.isEmpty()) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(interest);
+    }
+
+    /**
+     * Runs a command on a worker thread, or carries on with the connection's current response, and streams
+     * the response to the selector thread until it is complete or the client has enough bytes waiting.
+     *
+     * @param connection the connection the command came from
+     * @param command the command, or null to carry on with the current response
+     */
+    private void respond(Connection connection, AdminBinaryProtocol.Frame command) {
+        ConnectionOutputStream out = connection.out;
+        try {
+            try {
+                if (command != null) {
+                    out.written = false;
+                    connection.response = connection.binary
+                            ? service.openBinaryResponse(command.getCode(), command.getPayload())
+                            : service.openResponse(new String(command.getPayload(), StandardCharsets.UTF_8));
+                }
+                if (connection.response.writePart(out, out::isFull)) {
+                    connection.response = null;
+                }
+            }
+            catch (RuntimeException e) {
+                connection.response = null;
+                if (out.written || out.count > 0) {
+                    // Part of a response is already out, so the client can only learn of the failure by the connection closing
+                    connection.failed = true;
+                }
+                else if (connection.binary) {
+                    AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_ERROR,
+                            ("Error processing command: " + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                }
+                else {
+                    out.write(AdminProtocol.encodeResponse("Error processing command: " + e.getMessage()));
+                }
+            }
+            if (!connection.failed) {
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // The connection was closed while the response was being written
+            connection.response = null;
+        }
+        completed.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Writes as many queued responses as the connection accepts.
+     *
+     * @param key the key of the writable connection
+     * @throws IOException if the connection cannot be written
+     */
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        while (!connection.outputs.isEmpty()) {
+            ByteBuffer output = connection.outputs.peek();
+            channel.write(output);
+            if (output.hasRemaining()) {
+                break;
+            }
+            connection.outputs.poll();
+            connection.queuedBytes.addAndGet(-output.limit());
+        }
+        dispatch(connection);
+    }
+
+    /**
+     * Closes a connection or, for the server key, the server socket.
+     *
+     * @param key the key of the channel to close
+     */
+    private void closeConnection(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection != null) {
+            connection.closed = true;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the server, closing the server socket and every open connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+}
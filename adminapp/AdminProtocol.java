@@ -0,0 +1,280 @@
+package adminapp;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The AdminProtocol class holds the wire format shared by the admin server and its clients.
+ * A connection stays open for any number of commands. Each command is one line of text, and clients
+ * may send several commands without waiting for the replies (pipelining). The server answers every
+ * command in the order received with a framed response: a header line holding the length of the
+ * response in bytes, followed by that many bytes of UTF-8 text.
+ * Responses whose length is not known up front, such as product listings, are streamed instead: the header
+ * line is "*", followed by chunks that each consist of a length line and that many bytes, and a final "0" line.
+ *
+ * @author rargueta
+ */
+public final class AdminProtocol {
+
+    /**
+     * The longest response a client accepts, which guards against reading a corrupt header.
+     */
+    private static final int MAX_RESPONSE_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * The header line of a streamed response.
+     */
+    static final String STREAM_HEADER = "*";
+
+    /**
+     * The size of the chunks a streamed response is sent in.
+     */
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private AdminProtocol() {
+
+    }
+
+    /**
+     * Encodes a response with its frame header.
+     *
+     * @param response the response text
+     * @return the bytes to send to the client
+     */
+    public static byte[] encodeResponse(String response) {
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        byte[] header = (body.length + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = new byte[header.length + body.length];
+        System.arraycopy(header, 0, frame, 0, header.length);
+        System.arraycopy(body, 0, frame, header.length, body.length);
+        return frame;
+    }
+
+    /**
+     * Writes a framed response whose body is already encoded.
+     *
+     * @param out the stream to the client
+     * @param body the UTF-8 response body
+     * @throws IOException if the response cannot be written
+     */
+    public static void writeResponse(OutputStream out, byte[] body) throws IOException {
+        writeResponseHeader(out, body.length);
+        out.write(body);
+    }
+
+    /**
+     * Writes the length line of a response whose body the caller writes next.
+     *
+     * @param out the stream to write to
+     * @param length the length of the body in bytes
+     * @throws IOException if the header cannot be written
+     */
+    static void writeResponseHeader(OutputStream out, int length) throws IOException {
+        out.write((length + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes a command line. The caller flushes the stream when it wants the commands sent.
+     *
+     * @param out the stream to the server
+     * @param command the command, which must not contain line breaks
+     * @throws IOException if the command cannot be written
+     */
+    public static void writeCommand(OutputStream out, String command) throws IOException {
+        if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Commands must fit on one line");
+        }
+        out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Starts a streamed response. Everything written to the returned stream is sent in chunks;
+     * closing it ends the response but leaves the underlying stream open.
+     *
+     * @param out the stream to the client
+     * @return the stream to write the response body to
+     * @throws IOException if the header cannot be written
+     */
+    public static OutputStream streamResponse(OutputStream out) throws IOException {
+        out.write((STREAM_HEADER + "\n").getBytes(StandardCharsets.US_ASCII));
+        return new ChunkedOutputStream(out);
+    }
+
+    /**
+     * Reads one framed response.
+     *
+     * @param in the buffered stream from the server
+     * @return the response text, or null if the server closed the connection
+     * @throws IOException if the response cannot be read or is not framed correctly
+     */
+    public static String readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (!readResponse(in, body)) {
+            return null;
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads one framed or streamed response and copies its body to the given stream as it arrives.
+     *
+     * @param in the buffered stream from the server
+     * @param sink the stream receiving the response body
+     * @return false if the server closed the connection before sending a response
+     * @throws IOException if the response cannot be read or is not framed correctly
+     */
+    public static boolean readResponse(InputStream in, OutputStream sink) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return false;
+        }
+        if (!STREAM_HEADER.equals(header)) {
+            copy(in, sink, parseLength(header));
+            return true;
+        }
+        while (true) {
+            String chunkHeader = readLine(in);
+            if (chunkHeader == null) {
+                throw new EOFException("Connection closed in the middle of a response");
+            }
+            int length = parseLength(chunkHeader);
+            if (length == 0) {
+                return true;
+            }
+            copy(in, sink, length);
+        }
+    }
+
+    /**
+     * Parses the length in a header line.
+     *
+     * @param header the header line
+     * @return the length
+     * @throws IOException if the header is not a valid length
+     */
+    private static int parseLength(String header) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(header);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Malformed response header: " + header);
+        }
+        if (length < 0 || length > MAX_RESPONSE_LENGTH) {
+            throw new IOException("Malformed response length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Copies exactly the given number of bytes.
+     *
+     * @param in the stream to read from
+     * @param sink the stream to write to
+     * @param length the number of bytes to copy
+     * @throws IOException if the stream ends early or cannot be read or written
+     */
+    private static void copy(InputStream in, OutputStream sink, int length) throws IOException {
+        byte[] buffer = new byte[Math.min(length, CHUNK_SIZE)];
+        int remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, Math.min(remaining, buffer.length));
+            if (read < 0) {
+                throw new EOFException("Connection closed in the middle of a response");
+            }
+            sink.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Reads an ASCII line without its line break.
+     *
+     * @param in the stream to read from
+     * @return the line, or null at the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int next;
+        while ((next = in.read()) != '\n') {
+            if (next < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed in the middle of a line");
+            }
+            if (next != '\r') {
+                line.write(next);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Sends everything written to it as chunks of a streamed response.
+     */
+    private static final class ChunkedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        /**
+         * Sends the buffered bytes as one chunk.
+         *
+         * @throws IOException if the chunk cannot be written
+         */
+        private void writeChunk() throws IOException {
+            if (count > 0) {
+                out.write((count + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writeChunk();
+                out.write("0\n".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package adminapp;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.Map;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import storeapp.InventoryManager;
+import storeapp.InventoryPatch;
+import storeapp.InventorySnapshot;
 import storeapp.SalableProduct;
 import storeapp.StoreFront;
 
@@ -22,12 +33,78 @@ import storeapp.StoreFront;
  * The AdministrationService class provides functionality for managing the store's inventory
  * through a command-based interface. It listens for admin commands on a separate thread and
  * processes the commands to update or retrieve the store's inventory.
+ * By default connections are multiplexed on a selector (see {@link AdminNioServer}), so slow or idle
+ * clients do not hold up others; the original one-client-at-a-time listener is kept as {@link Mode#BLOCKING},
+ * and a thread per connection can be used with {@link Mode#VIRTUAL_THREADS} or {@link Mode#PLATFORM_THREADS}.
+ * Every mode speaks both the text protocol ({@link AdminProtocol}) and, for clients that ask for it when they
+ * connect, the binary protocol ({@link AdminBinaryProtocol}).
  * 
  * @pauthor rargueta
  */
 public class AdministrationService {
     private static final int PORT = 2222;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The size at which a batch of products is sent as one binary frame.
+     */
+    private static final int BINARY_BATCH_SIZE = 32 * 1024;
+
+    /**
+     * The largest inventory whose full listing is kept in memory by the listing caches; larger
+     * inventories are streamed on every request instead.
+     */
+    private static final int MAX_CACHED_PRODUCTS = 100_000;
+
+    /**
+     * The JSON listing of the whole inventory, as returned by a plain R.
+     */
+    private final SerializationCache jsonListing = new SerializationCache();
+
+    /**
+     * The response frames listing the whole inventory, as returned by an unfiltered binary retrieve.
+     */
+    private final SerializationCache binaryListing = new SerializationCache();
+
+    /**
+     * The latencies, counts and errors of commands and inventory calls, reported by the M command.
+     */
+    private final AdminMetrics metrics = new AdminMetrics();
+
+    /**
+     * The starts of responses that report a failed command.
+     */
+    private static final String[] ERROR_PREFIXES = {"Invalid", "Failed", "Patch rejected", "Error"};
+
+    /**
+     * The system property selecting the server {@link Mode}, e.g. "blocking" or "virtual_threads" (default "nio").
+     */
+    public static final String MODE_PROPERTY = "storefront.adminMode";
+
+    /**
+     * The system property naming the file the U command reads (default inventory.json).
+     */
+    public static final String UPDATE_FILE_PROPERTY = "storefront.updateFile";
+
+    /**
+     * How the service accepts and serves admin connections.
+     */
+    public enum Mode {
+        /** One thread accepts and serves one connection at a time. */
+        BLOCKING,
+        /** A selector thread multiplexes all connections and a small worker pool runs the commands. */
+        NIO,
+        /** Each connection is served by its own virtual thread, or a platform thread before Java 21. */
+        VIRTUAL_THREADS,
+        /** Each connection is served by its own platform thread, for comparison with virtual threads. */
+        PLATFORM_THREADS
+    }
+
     private StoreFront storeFront;
+    private final int port;
+    private AdminNioServer nioServer;
+    private ServerSocket serverSocket;
+    private ExecutorService connectionExecutor;
 
     /**
      * Constructs an AdministrationService object with the given StoreFront instance.
@@ -35,58 +112,140 @@ public class AdministrationService {
      * @param storeFront the StoreFront object representing the store
      */
     public AdministrationService(StoreFront storeFront) {
+        this(storeFront, PORT);
+    }
+
+    /**
+     * Constructs an AdministrationService object listening on the given port.
+     *
+     * @param storeFront the StoreFront object representing the store
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public AdministrationService(StoreFront storeFront, int port) {
         this.storeFront = storeFront;
+        this.port = port;
     }
 
     /**
-     * Starts the administration service by creating a separate thread to listen for admin commands.
-     * The thread continuously accepts incoming connections and processes the received commands.
+     * Starts the administration service in the mode selected by the {@value #MODE_PROPERTY} system property.
      */
     public void start() {
+        start(Mode.valueOf(System.getProperty(MODE_PROPERTY, Mode.NIO.name()).toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Starts the administration service in the given mode. Connections are served on background threads.
+     *
+     * @param mode how connections are served
+     */
+    public void start(Mode mode) {
+        if (mode == Mode.NIO) {
+            try {
+                nioServer = new AdminNioServer(this, port, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+                nioServer.start();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (mode == Mode.VIRTUAL_THREADS || mode == Mode.PLATFORM_THREADS) {
+            try {
+                serverSocket = new ServerSocket(port);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            connectionExecutor = mode == Mode.VIRTUAL_THREADS ? newVirtualThreadExecutor() : Executors.newCachedThreadPool();
+            Thread acceptor = new Thread(this::acceptConnections, "admin-acceptor");
+            acceptor.start();
+            return;
+        }
         // Create a separate thread to listen for admin commands
         Thread commandListener = new Thread(this::listenForCommands);
         commandListener.start();
     }
 
     /**
-     * Listens for admin commands on the specified port. Once a command is received,
-     * it is processed and an appropriate response is sent back to the client.
-     * The method runs in an infinite loop until the server is stopped.
+     * Creates an executor that runs every task on a new virtual thread. Virtual threads are looked up
+     * reflectively so the store still runs on Java versions before 21, where platform threads are used instead.
+     *
+     * @return the executor for connection handlers
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available on this Java version, using platform threads.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Accepts admin connections and hands each one to its own thread, which serves it with
+     * {@link #serveConnection(Socket)}. Runs until the server socket is closed.
+     */
+    private void acceptConnections() {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> serveConnection(socket));
+            }
+        }
+        catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the port the service is listening on. Only known once a server other than the
+     * {@link Mode#BLOCKING} listener has started.
+     *
+     * @return the local port, or the configured port if it is not known
+     */
+    public int getPort() {
+        if (nioServer != null) {
+            return nioServer.getPort();
+        }
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    /**
+     * Stops a server other than the {@link Mode#BLOCKING} listener.
+     * The NIO server also closes its open connections; connection threads finish their current command.
+     */
+    public void stop() {
+        if (nioServer != null) {
+            nioServer.close();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            connectionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Listens for admin connections on the specified port and serves them one at a time.
+     * The method runs in an infinite loop until a client sends Q.
      */
     private void listenForCommands() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
 
             while (true) {
                 Socket socket = serverSocket.accept();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-
-                String command = reader.readLine();
-
-                // Process the received command
-                switch (command) {
-                    case "U":
-                        // Handle the update command for store's inventory
-                        handleUpdateCommand();
-                        writer.println("Update command processed successfully.");
-                        break;
-                    case "R":
-                        // Handle the retrieve command to return Salable Products from the Inventory Management System
-                        String jsonData = handleRetrieveCommand();
-                        writer.println(jsonData);
-                        break;
-                        
-                    case "Q":
-                    	// Allows user to exit the application
-                    	writer.println("Exiting the Admin Service.");
-                    	return;
-                    	
-                    default:
-                        // Invalid command
-                        writer.println("Invalid command: " + command);
-                }
-
-                socket.close();
+                if (serveConnection(socket)) {
+                    // Allows user to exit the application
+                    return;
+                }
             }
         } 
         catch (IOException e) {
@@ -95,33 +254,451 @@ public class AdministrationService {
     }
 
     /**
-     * Handles an admin command received from the client socket. It reads the command,
-     * processes it, and sends an appropriate response back to the client.
+     * Runs one admin command and returns the response to send back to the client.
+     * Safe to call from several threads at once. The command's latency and outcome are recorded
+     * in the metrics reported by the M command.
+     *
+     * @param command the command line received from the client
+     * @return the response text
+     */
+    public String processCommand(String command) {
+        long start = System.nanoTime();
+        String response = null;
+        try {
+            response = runCommand(command);
+            return response;
+        }
+        finally {
+            metrics.record(metricName(command), System.nanoTime() - start, response == null || isError(response));
+        }
+    }
+
+    /**
+     * Returns the name a command's metrics are kept under. Unknown commands share one name, so clients
+     * cannot grow the metrics without bound.
+     *
+     * @param command the command line
+     * @return the command letter, or "invalid"
+     */
+    private static String metricName(String command) {
+        if (command != null) {
+            String name = command.split(" ", 2)[0];
+            if (name.length() == 1 && "URSPQM".contains(name)) {
+                return name;
+            }
+        }
+        return "invalid";
+    }
+
+    /**
+     * Returns whether a response reports a failure.
+     *
+     * @param response the response text
+     * @return true if the command failed
+     */
+    private static boolean isError(String response) {
+        for (String prefix : ERROR_PREFIXES) {
+            if (response.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs one admin command without recording metrics.
+     *
+     * @param command the command line received from the client
+     * @return the response text
+     */
+    private String runCommand(String command) {
+        if (command == null) {
+            return "Invalid command: " + command;
+        }
+        String[] parts = command.split(" ", 2);
+
+        // Process the received command
+        switch (parts[0]) {
+            case "U":
+                // Handle the update command for store's inventory
+                if (handleUpdateCommand()) {
+                    return "Update command processed successfully.";
+                }
+                return "Failed to update the inventory from inventory.json.";
+
+            case "R":
+                // Handle the retrieve command to return Salable Products from the Inventory Management System
+                return handleRetrieveCommand(parts.length > 1 ? parts[1] : "");
+
+            case "S":
+                // Save a binary snapshot of the inventory for fast startup
+                if (timed("StoreFront.saveSnapshot", storeFront::saveSnapshot)) {
+                    return "Inventory snapshot saved to " + StoreFront.SNAPSHOT_FILE + ".";
+                }
+                return "Failed to save inventory snapshot.";
+
+            case "P":
+                // Apply a batch of inline changes to individual products
+                return handlePatchCommand(parts.length > 1 ? parts[1] : "");
+
+            case "M":
+                // Report command latencies, counts and errors
+                return metrics.report();
+
+            case "Q":
+                return "Exiting the Admin Service.";
+
+            default:
+                // Invalid command
+                return "Invalid command: " + command;
+        }
+    }
+
+    /**
+     * Runs one admin command and writes its response, framed as described in {@link AdminProtocol}, to the given stream.
+     * Product listings are streamed: products are serialized to the stream as they are found instead of
+     * being collected in memory first.
+     *
+     * @param command the command line received from the client
+     * @param out the stream to the client
+     * @throws IOException if the response cannot be written
+     */
+    public void writeResponse(String command, OutputStream out) throws IOException {
+        if (isRetrieve(command)) {
+            new RetrieveResponse(command.substring(1).trim(), false).writePart(out, () -> false);
+            return;
+        }
+        out.write(AdminProtocol.encodeResponse(processCommand(command)));
+    }
+
+    /**
+     * Returns whether a text command is R, with or without a filter.
+     *
+     * @param command the command line
+     * @return true for R
+     */
+    private static boolean isRetrieve(String command) {
+        return command != null && (command.equals("R") || command.startsWith("R "));
+    }
+
+    /**
+     * A response that can be written a part at a time. The NIO server stops writing a response once the
+     * client has enough unread bytes waiting and carries on when it has read them, instead of holding a
+     * worker thread until a slow client catches up.
+     */
+    interface PartialResponse {
+
+        /**
+         * Writes the next part of the response.
+         *
+         * @param out the stream to the client; every part is written to the same stream
+         * @param full tells when the client has enough unread bytes waiting, at which point writing should stop
+         * @return true once the whole response has been written
+         * @throws IOException if the response cannot be written
+         */
+        boolean writePart(OutputStream out, BooleanSupplier full) throws IOException;
+    }
+
+    /**
+     * Prepares the response to a text command, to be written with {@link PartialResponse#writePart}.
+     * Listings are written in parts; every other response is written whole by the first part.
+     *
+     * @param command the command line received from the client
+     * @return the response
+     */
+    PartialResponse openResponse(String command) {
+        if (isRetrieve(command)) {
+            return new RetrieveResponse(command.substring(1).trim(), false);
+        }
+        return (out, full) -> {
+            writeResponse(command, out);
+            return true;
+        };
+    }
+
+    /**
+     * Prepares the response to a binary request, to be written with {@link PartialResponse#writePart}.
+     * Listings are written in parts; every other response is written whole by the first part.
+     *
+     * @param opcode the opcode of the request
+     * @param payload the payload of the request
+     * @return the response
+     */
+    PartialResponse openBinaryResponse(byte opcode, byte[] payload) {
+        if (opcode == AdminBinaryProtocol.OP_RETRIEVE) {
+            return new RetrieveResponse(new String(payload, StandardCharsets.UTF_8).trim(), true);
+        }
+        return (out, full) -> {
+            writeBinaryResponse(opcode, payload, out);
+            return true;
+        };
+    }
+
+    /**
+     * The response to a retrieve command or request, in either protocol. A listing of the whole inventory
+     * is sent from the listing cache when it fits in it; otherwise products are serialized as they are
+     * listed, and the listing picks up where it stopped at the next part.
+     */
+    private final class RetrieveResponse implements PartialResponse {
+        private final String arguments;
+        private final boolean binary;
+        private final long start = System.nanoTime();
+        private byte[] cached;
+        private int cachedOffset;
+        private OutputStream body;
+        private ListingWriter listing;
+        private boolean succeeded;
+
+        /**
+         * Creates the response.
+         *
+         * @param arguments the filter, or an empty string for the whole inventory
+         * @param binary true for {@link AdminBinaryProtocol} frames, false for {@link AdminProtocol}
+         */
+        RetrieveResponse(String arguments, boolean binary) {
+            this.arguments = arguments;
+            this.binary = binary;
+        }
+
+        @Override
+        public boolean writePart(OutputStream out, BooleanSupplier full) throws IOException {
+            boolean done = false;
+            boolean threw = true;
+            try {
+                done = writeNextPart(out, full);
+                threw = false;
+                return done;
+            }
+            finally {
+                if (done || threw) {
+                    metrics.record("R", System.nanoTime() - start, !succeeded);
+                }
+            }
+        }
+
+        /**
+         * Writes the next part: the first part starts the response, later ones continue it.
+         *
+         * @param out the stream to the client
+         * @param full tells when to stop writing
+         * @return true once the whole response has been written
+         * @throws IOException if the response cannot be written
+         */
+        private boolean writeNextPart(OutputStream out, BooleanSupplier full) throws IOException {
+            if (cached == null && listing == null) {
+                RetrieveFilter filter = null;
+                if (!arguments.isEmpty()) {
+                    try {
+                        filter = RetrieveFilter.parse(MAPPER, arguments);
+                    }
+                    catch (IOException e) {
+                        if (binary) {
+                            writeBinaryError(out, "Invalid filter: " + e.getMessage());
+                        }
+                        else {
+                            out.write(AdminProtocol.encodeResponse("Invalid filter: " + e.getMessage()));
+                        }
+                        return true;
+                    }
+                }
+                cached = filter == null ? cachedListing(binary) : null;
+                if (cached != null) {
+                    if (!binary) {
+                        AdminProtocol.writeResponseHeader(out, cached.length);
+                    }
+                }
+                else {
+                    body = binary ? out : AdminProtocol.streamResponse(out);
+                    listing = new ListingWriter(filter, binary, body);
+                }
+            }
+            if (cached != null) {
+                // The cached bytes are shared, so they are handed out a slice at a time rather than copied whole
+                while (cachedOffset < cached.length && !full.getAsBoolean()) {
+                    int length = Math.min(cached.length - cachedOffset, BINARY_BATCH_SIZE);
+                    out.write(cached, cachedOffset, length);
+                    cachedOffset += length;
+                }
+                succeeded = cachedOffset == cached.length;
+                return succeeded;
+            }
+            if (!listing.write(full)) {
+                return false;
+            }
+            if (!binary) {
+                body.close();
+            }
+            succeeded = true;
+            return true;
+        }
+    }
+
+    /**
+     * Runs one binary request and writes its response frames, as described in {@link AdminBinaryProtocol},
+     * to the given stream. Product listings are streamed a batch of products at a time.
+     *
+     * @param opcode the opcode of the request
+     * @param payload the payload of the request
+     * @param out the stream to the client
+     * @throws IOException if the response cannot be written
+     */
+    public void writeBinaryResponse(byte opcode, byte[] payload, OutputStream out) throws IOException {
+        if (opcode == AdminBinaryProtocol.OP_COMMAND) {
+            // Recorded by processCommand
+            AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_OK,
+                    processCommand(new String(payload, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (opcode == AdminBinaryProtocol.OP_RETRIEVE) {
+            // Recorded by the response
+            new RetrieveResponse(new String(payload, StandardCharsets.UTF_8).trim(), true).writePart(out, () -> false);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            succeeded = writeBinaryRequestResponse(opcode, payload, out);
+        }
+        finally {
+            String name = opcode == AdminBinaryProtocol.OP_PATCH ? "P" : "invalid";
+            metrics.record(name, System.nanoTime() - start, !succeeded);
+        }
+    }
+
+    /**
+     * Runs a binary patch request and writes its response frames.
+     *
+     * @param opcode the opcode of the request
+     * @param payload the payload of the request
+     * @param out the stream to the client
+     * @return false if the request failed and an error frame was written
+     * @throws IOException if the response cannot be written
+     */
+    private boolean writeBinaryRequestResponse(byte opcode, byte[] payload, OutputStream out) throws IOException {
+        switch (opcode) {
+            case AdminBinaryProtocol.OP_PATCH:
+                InventoryPatch patch;
+                try {
+                    patch = InventoryPatch.read(new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+                catch (IOException e) {
+                    writeBinaryError(out, "Invalid patch: " + e.getMessage());
+                    return false;
+                }
+                try {
+                    int applied = applyPatch(patch);
+                    AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_OK,
+                            ("Patch applied: " + applied + " changes.").getBytes(StandardCharsets.UTF_8));
+                    return true;
+                }
+                catch (IllegalArgumentException e) {
+                    writeBinaryError(out, "Patch rejected: " + e.getMessage());
+                    return false;
+                }
+
+            default:
+                writeBinaryError(out, "Invalid opcode: " + opcode);
+                return false;
+        }
+    }
+
+    /**
+     * Applies a patch to the inventory, timing the call.
+     *
+     * @param patch the patch
+     * @return the number of operations applied
+     * @throws IllegalArgumentException if the inventory rejects the patch
+     */
+    private int applyPatch(InventoryPatch patch) {
+        InventoryManager inventoryManager = storeFront.getInventoryManager();
+        return timed("InventoryManager.applyPatch", () -> inventoryManager.applyPatch(patch));
+    }
+
+    /**
+     * Runs a call into the store and records its latency under the given name; calls that throw count as errors.
+     *
+     * @param <T> the type of the result
+     * @param operation the name of the operation
+     * @param call the call
+     * @return the result of the call
+     */
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        }
+        finally {
+            metrics.record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Returns the listing of the whole inventory from the cache, serializing it if the inventory
+     * has changed since it was last serialized.
+     *
+     * @param binary true for the binary response frames, false for the JSON
+     * @return the listing, or null if the inventory is too large to cache
+     * @throws IOException if the listing cannot be serialized
+     */
+    private byte[] cachedListing(boolean binary) throws IOException {
+        InventoryManager inventoryManager = storeFront.getInventoryManager();
+        // Read the version first, so the listing is at least as new as it
+        long version = inventoryManager.getVersion();
+        if (inventoryManager.getInventory().size() > MAX_CACHED_PRODUCTS) {
+            return null;
+        }
+        SerializationCache cache = binary ? binaryListing : jsonListing;
+        return cache.get(version, () -> {
+            ByteArrayOutputStream listing = new ByteArrayOutputStream();
+            new ListingWriter(null, binary, listing).write(() -> false);
+            return listing.toByteArray();
+        });
+    }
+
+    /**
+     * Writes a binary error response.
+     *
+     * @param out the stream to the client
+     * @param message the error message
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeBinaryError(OutputStream out, String message) throws IOException {
+        AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Serves the commands sent on one connection until the client disconnects or sends Q.
+     * Every command gets a framed response (see {@link AdminProtocol}); responses to pipelined
+     * commands are flushed together once no more commands are waiting in the input buffer.
      *
      * @param clientSocket the Socket representing the client connection
+     * @return true if the client sent Q
      */
-    private void handleCommand(Socket clientSocket) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)) {
+    private boolean serveConnection(Socket clientSocket) {
+        try (InputStream in = new BufferedInputStream(clientSocket.getInputStream(), 1 << 16);
+             OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream(), 1 << 16)) {
 
-            // Read the command from the client
-            String command = reader.readLine();
+            in.mark(1);
+            if (in.read() == (AdminBinaryProtocol.MAGIC & 0xFF)) {
+                return serveBinaryConnection(in, out);
+            }
+            in.reset();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
 
-            // Process the received command
-            switch (command) {
-                case "U":
-                    // Handle the update command for store's inventory
-                    handleUpdateCommand();
-                    writer.println("Update command processed successfully.");
-                    break;
-                case "R":
-                    // Handle the retrieve command to return Salable Products from Inventory Management System
-                    String jsonData = handleRetrieveCommand();
-                    writer.println(jsonData);
-                    break;
-                default:
-                    // Invalid command
-                    writer.println("Invalid command: " + command);
+            // Read commands from the client and send back the responses in order
+            String command;
+            while ((command = reader.readLine()) != null) {
+                writeResponse(command, out);
+                if ("Q".equals(command)) {
+                    out.flush();
+                    return true;
+                }
+                if (!reader.ready()) {
+                    out.flush();
+                }
             }
         } 
         catch (IOException e) {
@@ -135,33 +712,83 @@ public class AdministrationService {
                 e.printStackTrace();
             }
         }
+        return false;
     }
 
     /**
-     * Handles the update command by reading the JSON data from the inventory file,
-     * converting it to a list of SalableProduct objects, and updating the store's inventory.
-     * Any errors during the process are printed to the console.
+     * Serves a connection that has asked for the binary protocol, once its magic byte has been read.
+     *
+     * @param in the stream from the client
+     * @param out the stream to the client
+     * @return true if the client sent Q
+     * @throws IOException if the connection fails or the client breaks the protocol
      */
-    private void handleUpdateCommand() {
-        try {
-            // Read the JSON data from the inventory file
-            Path filePath = Paths.get("inventory.json");
-            String jsonData = Files.readString(filePath);
-
-            // Convert the JSON data to a list of SalableProduct objects
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<SalableProduct> salableProducts = objectMapper.readValue(jsonData, new TypeReference<List<SalableProduct>>() {});
-
-            // Update the Store's inventory with the new Salable Products
-            InventoryManager inventoryManager = storeFront.getInventoryManager();
-            for (SalableProduct product : salableProducts) {
-                inventoryManager.addProduct(product);
+    private boolean serveBinaryConnection(InputStream in, OutputStream out) throws IOException {
+        AdminBinaryProtocol.readHello(in);
+        out.write(AdminBinaryProtocol.HELLO);
+        out.flush();
+        DataInputStream frames = new DataInputStream(in);
+        AdminBinaryProtocol.Frame request;
+        while ((request = AdminBinaryProtocol.readFrame(frames)) != null) {
+            writeBinaryResponse(request.getCode(), request.getPayload(), out);
+            if (request.getCode() == AdminBinaryProtocol.OP_COMMAND && "Q".equals(new String(request.getPayload(), StandardCharsets.UTF_8))) {
+                out.flush();
+                return true;
             }
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+        return false;
+    }
 
-            System.out.println("Update command processed successfully.");
+    /**
+     * Handles the update command by adding every product in the update file (inventory.json unless the
+     * {@value #UPDATE_FILE_PROPERTY} system property names another) to the store's inventory.
+     * The file is streamed, so large updates are not held in memory as a whole.
+     * Any errors during the process are printed to the console.
+     *
+     * @return true if the update file was read and applied
+     */
+    private boolean handleUpdateCommand() {
+        String fileName = System.getProperty(UPDATE_FILE_PROPERTY, StoreFront.INVENTORY_FILE);
+        InventoryManager inventoryManager = storeFront.getInventoryManager();
+        try {
+            long added = timed("InventoryManager.addProductsFromFile", () -> {
+                try {
+                    return inventoryManager.addProductsFromFile(fileName);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.println("Update command processed successfully: " + added + " products from " + fileName + ".");
+            return true;
         } 
+        catch (UncheckedIOException e) {
+            System.out.println("Error reading inventory file: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Handles the patch command by applying a JSON array of product changes to the store's inventory.
+     * Either the whole patch is applied or none of it is.
+     *
+     * @param json the patch, see {@link InventoryPatch}
+     * @return the result of the patch to send back to the client
+     */
+    private String handlePatchCommand(String json) {
+        try {
+            int applied = applyPatch(InventoryPatch.parse(json));
+            return "Patch applied: " + applied + " changes.";
+        }
         catch (IOException e) {
-            System.out.println("Error reading inventory file: " + e.getMessage());
+            return "Invalid patch: " + e.getMessage();
+        }
+        catch (IllegalArgumentException e) {
+            return "Patch rejected: " + e.getMessage();
         }
     }
 
@@ -169,20 +796,205 @@ public class AdministrationService {
      * Handles the retrieve command by returning the store's inventory as a JSON string.
      * Any errors during the conversion process are printed to the console.
      *
+     * @param arguments the optional filter, see {@link RetrieveFilter}
      * @return the JSON representation of the store's inventory
      */
-    private String handleRetrieveCommand() {
-        // Retrieve all Salable Products from the Store Inventory Management System
-        Map<String, SalableProduct> inventory = storeFront.getInventoryManager().getInventory();
-
-        // Convert the inventory map to a JSON string
+    private String handleRetrieveCommand(String arguments) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.writeValueAsString(inventory);
-        } 
-        catch (JsonProcessingException e) {
+            RetrieveFilter filter = arguments.isBlank() ? null : RetrieveFilter.parse(MAPPER, arguments);
+            byte[] cached = filter == null ? cachedListing(false) : null;
+            if (cached != null) {
+                return new String(cached, StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            new ListingWriter(filter, false, json).write(() -> false);
+            return json.toString(StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
             System.out.println("Error converting inventory to JSON: " + e.getMessage());
-            return "";
+            return "Invalid filter: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Writes the products of the inventory, one product at a time, and can stop and carry on later.
+     * As JSON, without a filter every product is written as an object keyed by product name; with a filter,
+     * one page of matching products is written as {"products": [...], "next": cursor}, where the cursor
+     * is the "after" value for the next page, or null on the last page. As binary frames, the products
+     * are sent in batches followed by a frame holding the cursor.
+     * The time spent listing and writing, over every part but not while waiting for the client, is recorded
+     * once the listing is complete as ListingWriter.all or ListingWriter.page.
+     */
+    private final class ListingWriter {
+        private final RetrieveFilter filter;
+        private final boolean binary;
+        private final OutputStream out;
+        private final Iterator<SalableProduct> products;
+        private int written;
+        private String lastName;
+        private String next;
+        private JsonGenerator generator;
+        private ByteArrayOutputStream batch;
+        private DataOutputStream batchOut;
+        private long elapsed;
+
+        /**
+         * Starts a listing.
+         *
+         * @param filter the filter and page to write, or null for the whole inventory
+         * @param binary true for binary frames, false for JSON
+         * @param out the stream to write to
+         * @throws IOException if the listing cannot be started
+         */
+        ListingWriter(RetrieveFilter filter, boolean binary, OutputStream out) throws IOException {
+            this.filter = filter;
+            this.binary = binary;
+            this.out = out;
+            long start = System.nanoTime();
+            InventoryManager inventoryManager = storeFront.getInventoryManager();
+            if (filter == null) {
+                products = inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING).iterator();
+            }
+            else {
+                products = inventoryManager.getProductsByNameFrom(filter.startName(), filter.startInclusive()).iterator();
+            }
+            if (binary) {
+                batch = new ByteArrayOutputStream(BINARY_BATCH_SIZE + 256);
+                batchOut = new DataOutputStream(batch);
+            }
+            else {
+                generator = MAPPER.getFactory().createGenerator(out);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartObject();
+                if (filter != null) {
+                    generator.writeArrayFieldStart("products");
+                }
+            }
+            elapsed = System.nanoTime() - start;
+        }
+
+        /**
+         * Writes products until the listing is complete or the stream is full.
+         *
+         * @param full tells when to stop writing
+         * @return true once the whole listing has been written
+         * @throws IOException if the products cannot be written
+         */
+        boolean write(BooleanSupplier full) throws IOException {
+            long start = System.nanoTime();
+            boolean done = false;
+            boolean failed = true;
+            try {
+                done = writeProducts(full);
+                failed = false;
+                return done;
+            }
+            finally {
+                elapsed += System.nanoTime() - start;
+                if (done || failed) {
+                    metrics.record(filter == null ? "ListingWriter.all" : "ListingWriter.page", elapsed, failed);
+                }
+            }
+        }
+
+        /**
+         * Writes products for {@link #write(BooleanSupplier)}.
+         *
+         * @param full tells when to stop writing
+         * @return true once the whole listing has been written
+         * @throws IOException if the products cannot be written
+         */
+        private boolean writeProducts(BooleanSupplier full) throws IOException {
+            while (!full.getAsBoolean()) {
+                SalableProduct product = nextProduct();
+                if (product == null) {
+                    finish();
+                    return true;
+                }
+                if (binary) {
+                    InventorySnapshot.writeProduct(batchOut, product);
+                    if (batch.size() >= BINARY_BATCH_SIZE) {
+                        writeBatch();
+                    }
+                }
+                else if (filter == null) {
+                    generator.writeFieldName(product.getName());
+                    generator.writeObject(product);
+                }
+                else {
+                    generator.writeObject(product);
+                }
+            }
+            // Hand over what is buffered, so that the stream is known to be full before stopping
+            if (binary) {
+                writeBatch();
+            }
+            else {
+                generator.flush();
+            }
+            return false;
+        }
+
+        /**
+         * Returns the next product selected by the filter, in name order.
+         *
+         * @return the product, or null once the listing or page is complete
+         */
+        private SalableProduct nextProduct() {
+            while (products.hasNext()) {
+                SalableProduct product = products.next();
+                if (filter == null) {
+                    return product;
+                }
+                if (filter.isPastPrefix(product.getName())) {
+                    break;
+                }
+                if (!filter.matches(product)) {
+                    continue;
+                }
+                if (written == filter.limit) {
+                    // The cursor is exclusive, so the next page continues after the last product written
+                    next = lastName;
+                    break;
+                }
+                lastName = product.getName();
+                written++;
+                return product;
+            }
+            return null;
+        }
+
+        /**
+         * Sends the batched products as one binary frame.
+         *
+         * @throws IOException if the frame cannot be written
+         */
+        private void writeBatch() throws IOException {
+            if (batch.size() > 0) {
+                AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_PRODUCTS, batch.toByteArray());
+                batch.reset();
+            }
+        }
+
+        /**
+         * Ends the listing with the cursor for the next page.
+         *
+         * @throws IOException if the end cannot be written
+         */
+        private void finish() throws IOException {
+            if (binary) {
+                writeBatch();
+                AdminBinaryProtocol.writeFrame(out, AdminBinaryProtocol.STATUS_OK,
+                        next == null ? new byte[0] : next.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (filter != null) {
+                generator.writeEndArray();
+                generator.writeStringField("next", next);
+            }
+            generator.writeEndObject();
+            generator.close();
         }
     }
+
 }
\ No newline at end of file
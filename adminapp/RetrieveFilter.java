@@ -0,0 +1,137 @@
+package adminapp;
+import java.io.IOException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import storeapp.Armor;
+import storeapp.Health;
+import storeapp.SalableProduct;
+import storeapp.Weapon;
+
+/**
+ * The RetrieveFilter class holds the arguments of a filtered, paginated retrieve command, written as a
+ * JSON object after the R, for example:
+ * <pre>
+ * R {"prefix": "Sw", "type": "weapon", "minPrice": 10, "maxPrice": 200, "after": "Sword", "limit": 50}
+ * </pre>
+ * Every field is optional. Products are listed in name order; "prefix" matches the start of the name
+ * (case-sensitive, like the ordering), "type" is one of weapon, armor, health or product, and "after"
+ * is the "next" cursor returned with the previous page.
+ *
+ * @author rargueta
+ */
+final class RetrieveFilter {
+
+    /**
+     * The page size used when the filter does not set a limit.
+     */
+    static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * The largest page size a client may ask for.
+     */
+    static final int MAX_LIMIT = 10_000;
+
+    final String prefix;
+    final Class<? extends SalableProduct> type;
+    final int minPrice;
+    final int maxPrice;
+    final String after;
+    final int limit;
+
+    private RetrieveFilter(String prefix, Class<? extends SalableProduct> type, int minPrice, int maxPrice, String after, int limit) {
+        this.prefix = prefix;
+        this.type = type;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.after = after;
+        this.limit = limit;
+    }
+
+    /**
+     * Parses the filter of a retrieve command.
+     *
+     * @param mapper the mapper used to read the JSON
+     * @param json the JSON object following the R
+     * @return the parsed filter
+     * @throws IOException if the filter is malformed
+     */
+    static RetrieveFilter parse(ObjectMapper mapper, String json) throws IOException {
+        JsonNode node = mapper.readTree(json);
+        if (node == null || !node.isObject()) {
+            throw new IOException("Expected a JSON object of filter fields");
+        }
+        Class<? extends SalableProduct> type = null;
+        if (node.hasNonNull("type")) {
+            switch (node.get("type").asText().toLowerCase(Locale.ROOT)) {
+                case "weapon":
+                    type = Weapon.class;
+                    break;
+                case "armor":
+                    type = Armor.class;
+                    break;
+                case "health":
+                    type = Health.class;
+                    break;
+                case "product":
+                    type = SalableProduct.class;
+                    break;
+                default:
+                    throw new IOException("Unknown product type: " + node.get("type").asText());
+            }
+        }
+        int limit = node.path("limit").asInt(DEFAULT_LIMIT);
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IOException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return new RetrieveFilter(
+                node.hasNonNull("prefix") ? node.get("prefix").asText() : null,
+                type,
+                node.path("minPrice").asInt(Integer.MIN_VALUE),
+                node.path("maxPrice").asInt(Integer.MAX_VALUE),
+                node.hasNonNull("after") ? node.get("after").asText() : null,
+                limit);
+    }
+
+    /**
+     * Returns the name to start listing from.
+     *
+     * @return the later of the cursor and the prefix, or null to start with the first product
+     */
+    String startName() {
+        return startInclusive() ? prefix : after;
+    }
+
+    /**
+     * Returns whether a product with exactly the {@link #startName()} is part of the listing.
+     *
+     * @return true if the listing starts at the prefix, false if it continues after the cursor
+     */
+    boolean startInclusive() {
+        return prefix != null && (after == null || after.compareTo(prefix) < 0);
+    }
+
+    /**
+     * Returns whether a product name is beyond every name the prefix can match, which ends the listing.
+     *
+     * @param name a product name at or after the start name
+     * @return true if no later product can match
+     */
+    boolean isPastPrefix(String name) {
+        return prefix != null && !name.startsWith(prefix);
+    }
+
+    /**
+     * Returns whether a product passes the type and price filters.
+     *
+     * @param product the product
+     * @return true if the product is listed
+     */
+    boolean matches(SalableProduct product) {
+        return (type == null || product.getClass() == type)
+                && product.getPrice() >= minPrice
+                && product.getPrice() <= maxPrice;
+    }
+}
@@ -0,0 +1,93 @@
+package adminapp;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The SerializationCache class holds the serialized form of a view of the inventory for the latest
+ * inventory version (see {@link storeapp.InventoryManager#getVersion()}). Requests for a version that
+ * is already cached, or is being serialized, share that result instead of serializing again, so
+ * concurrent retrievals of an unchanged inventory cost one serialization between them.
+ *
+ * @author rargueta
+ */
+final class SerializationCache {
+
+    /**
+     * Serializes the current state of the inventory.
+     */
+    interface Serializer {
+        byte[] serialize() throws IOException;
+    }
+
+    /**
+     * The bytes of one version, complete or still being serialized.
+     */
+    private static final class Entry {
+        final long version;
+        final CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+
+        Entry(long version) {
+            this.version = version;
+        }
+    }
+
+    private final AtomicReference<Entry> current = new AtomicReference<>();
+
+    /**
+     * Returns the serialized bytes of the inventory at the given version or later, serializing them
+     * if no request has yet. The caller reads the version before calling, so that the bytes returned
+     * never predate it.
+     *
+     * @param version the inventory version the caller has seen
+     * @param serializer serializes the inventory if needed
+     * @return the serialized bytes, shared between callers and not to be modified
+     * @throws IOException if serialization fails
+     */
+    byte[] get(long version, Serializer serializer) throws IOException {
+        while (true) {
+            Entry entry = current.get();
+            if (entry != null && entry.version >= version) {
+                return await(entry);
+            }
+            Entry created = new Entry(version);
+            if (!current.compareAndSet(entry, created)) {
+                continue;
+            }
+            try {
+                byte[] bytes = serializer.serialize();
+                created.bytes.complete(bytes);
+                return bytes;
+            }
+            catch (IOException | RuntimeException e) {
+                // Waiting callers see the failure; later callers try again
+                created.bytes.completeExceptionally(e);
+                current.compareAndSet(created, null);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Waits for the bytes of an entry.
+     *
+     * @param entry the entry
+     * @return its bytes
+     * @throws IOException if serializing the entry failed
+     */
+    private static byte[] await(Entry entry) throws IOException {
+        try {
+            return entry.bytes.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package bench;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import adminapp.AdminClient;
+import adminapp.AdministrationService;
+import adminapp.LatencyHistogram;
+import storeapp.InventoryManager;
+import storeapp.SalableProduct;
+import storeapp.StoreFront;
+
+/**
+ * The AdminLoadGenerator class is a load and soak tool for the admin service. It starts a store and its
+ * admin service in-process on loopback, opens a pool of client connections and sends commands at a fixed
+ * arrival rate, whether or not earlier commands have been answered (an open loop, like real admin traffic).
+ *
+ * Latency is measured from the moment each command was scheduled to be sent, not from when a client got
+ * round to sending it, so time spent queued behind a slow server is counted (correcting for coordinated
+ * omission). The plain service time is reported next to it; a large gap between the two means the
+ * service could not keep up with the requested rate.
+ *
+ * Options are given as name=value arguments:
+ * <ul>
+ * <li>rate: commands per second (default 1000)</li>
+ * <li>clients: client connections (default 1000)</li>
+ * <li>duration: seconds measured (default 30), after warmup seconds not measured (default 5)</li>
+ * <li>mix: relative weights of the commands, from R (full listing), RF (filtered page), P (patch),
+ * U (update from a file) and M (metrics); default R=5,RF=40,P=50,U=1,M=4</li>
+ * <li>catalog: products in the generated catalog (default 10000); updateSize: products in the U file (default 100)</li>
+ * <li>mode: the admin server mode, nio, virtual_threads or platform_threads (default nio); blocking is rejected
+ * because it serves one connection at a time and binds its port only once it starts listening;
+ * report: seconds between progress lines (default 10)</li>
+ * </ul>
+ *
+ * @author rargueta
+ */
+public final class AdminLoadGenerator {
+
+	private final double rate;
+	private final int clients;
+	private final int warmupSeconds;
+	private final int durationSeconds;
+	private final int reportSeconds;
+	private final int catalogSize;
+	private final int updateSize;
+	private final AdministrationService.Mode mode;
+	private final String[] commandNames;
+	private final int[] cumulativeWeights;
+
+	private final Map<String, LatencyHistogram> correctedLatency = new LinkedHashMap<>();
+	private final Map<String, LatencyHistogram> serviceTime = new LinkedHashMap<>();
+	private final Map<String, AtomicLong> errors = new LinkedHashMap<>();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong lastCompletion = new AtomicLong();
+	private final List<AdminClient> connections = Collections.synchronizedList(new ArrayList<>());
+
+	private String[] productNames;
+	private ThreadLocal<AdminClient> connection;
+	private int port;
+
+	/**
+	 * Creates a generator from name=value options.
+	 *
+	 * @param options the options
+	 */
+	private AdminLoadGenerator(Map<String, String> options) {
+		rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+		clients = Integer.parseInt(options.getOrDefault("clients", "1000"));
+		warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+		durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+		reportSeconds = Integer.parseInt(options.getOrDefault("report", "10"));
+		catalogSize = Integer.parseInt(options.getOrDefault("catalog", "10000"));
+		updateSize = Integer.parseInt(options.getOrDefault("updateSize", "100"));
+		mode = AdministrationService.Mode.valueOf(options.getOrDefault("mode", "nio").toUpperCase(Locale.ROOT));
+		if (mode == AdministrationService.Mode.BLOCKING) {
+			throw new IllegalArgumentException("mode=blocking cannot be load tested: it serves one connection at a time"
+					+ " and cannot be stopped; use nio, virtual_threads or platform_threads");
+		}
+
+		String[] entries = options.getOrDefault("mix", "R=5,RF=40,P=50,U=1,M=4").split(",");
+		commandNames = new String[entries.length];
+		cumulativeWeights = new int[entries.length];
+		int total = 0;
+		for (int i = 0; i < entries.length; i++) {
+			String[] entry = entries[i].trim().split("=");
+			commandNames[i] = entry[0].toUpperCase(Locale.ROOT);
+			if (!List.of("R", "RF", "P", "U", "M").contains(commandNames[i])) {
+				throw new IllegalArgumentException("Unknown command in mix: " + entry[0]);
+			}
+			total += Integer.parseInt(entry[1]);
+			cumulativeWeights[i] = total;
+			correctedLatency.put(commandNames[i], new LatencyHistogram());
+			serviceTime.put(commandNames[i], new LatencyHistogram());
+			errors.put(commandNames[i], new AtomicLong());
+		}
+		if (rate <= 0 || clients <= 0 || total <= 0) {
+			throw new IllegalArgumentException("rate, clients and the mix weights must be positive");
+		}
+	}
+
+	/**
+	 * Runs the load test and prints the report.
+	 *
+	 * @param args name=value options, see the class description
+	 * @throws Exception if the store cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator <= 0) {
+				System.out.println("Options are name=value, got: " + arg);
+				return;
+			}
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		new AdminLoadGenerator(options).run();
+	}
+
+	/**
+	 * Starts the store, sends the load and prints the report.
+	 *
+	 * @throws Exception if the store cannot be started
+	 */
+	private void run() throws Exception {
+		File catalog = CatalogGenerator.catalog(catalogSize);
+		File update = CatalogGenerator.catalog(updateSize);
+		InventoryManager inventoryManager = new InventoryManager(catalog.getPath());
+		List<String> names = new ArrayList<>();
+		for (SalableProduct product : inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING)) {
+			names.add(product.getName());
+		}
+		Collections.shuffle(names, new Random(1));
+		productNames = names.toArray(new String[0]);
+
+		System.setProperty(AdministrationService.UPDATE_FILE_PROPERTY, update.getPath());
+		AdministrationService service = new AdministrationService(new StoreFront(inventoryManager), 0);
+		service.start(mode);
+		port = service.getPort();
+		connection = ThreadLocal.withInitial(this::connect);
+		System.out.println("Admin service (" + mode + ") on port " + port + ": " + catalogSize + " products, "
+				+ clients + " clients, " + rate + " commands/s for " + warmupSeconds + "+" + durationSeconds + " s");
+
+		ThreadPoolExecutor senders = new ThreadPoolExecutor(clients, clients, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		senders.prestartAllCoreThreads();
+		long measureStart = generate(senders);
+		senders.shutdown();
+		if (!senders.awaitTermination(60, TimeUnit.SECONDS)) {
+			System.out.println("Commands still outstanding after 60 s: " + senders.getQueue().size());
+			senders.shutdownNow();
+		}
+		report(measureStart);
+		System.out.println();
+		System.out.println("Server-side metrics:");
+		System.out.println(service.processCommand("M"));
+
+		for (AdminClient client : connections) {
+			try {
+				client.close();
+			}
+			catch (IOException e) {
+				// The connection is being discarded anyway
+			}
+		}
+		service.stop();
+		System.clearProperty(AdministrationService.UPDATE_FILE_PROPERTY);
+	}
+
+	/**
+	 * Schedules commands at the requested rate until the run is over. A command whose scheduled time has
+	 * passed is submitted at once, so falling behind never lowers the offered load.
+	 *
+	 * @param senders the pool of client threads
+	 * @return the time at which measurement started, in System.nanoTime() units
+	 */
+	private long generate(ExecutorService senders) {
+		Random random = new Random(7);
+		double intervalNanos = 1e9 / rate;
+		long start = System.nanoTime();
+		long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+		long nextReport = start + TimeUnit.SECONDS.toNanos(reportSeconds);
+		for (long i = 0; ; i++) {
+			long intended = start + (long) (i * intervalNanos);
+			if (intended >= end) {
+				return measureStart;
+			}
+			long now = System.nanoTime();
+			if (intended > now) {
+				LockSupport.parkNanos(intended - now);
+			}
+			String name = pickCommand(random);
+			String command = commandLine(name, random);
+			boolean measured = intended >= measureStart;
+			senders.execute(() -> send(name, command, intended, measured));
+			if (now >= nextReport) {
+				System.out.printf("%6.0f s: %d completed, %d queued%n", (now - start) / 1e9, completed.get(),
+						((ThreadPoolExecutor) senders).getQueue().size());
+				nextReport += TimeUnit.SECONDS.toNanos(reportSeconds);
+			}
+		}
+	}
+
+	/**
+	 * Sends one command on this thread's connection and records its latency.
+	 *
+	 * @param name the command's name in the mix
+	 * @param command the command line
+	 * @param intended when the command was scheduled to be sent
+	 * @param measured whether the command falls in the measured period
+	 */
+	private void send(String name, String command, long intended, boolean measured) {
+		long sent = System.nanoTime();
+		boolean failed;
+		try {
+			String response = connection.get().send(command);
+			failed = response.startsWith("Invalid") || response.startsWith("Failed") || response.startsWith("Patch rejected");
+		}
+		catch (IOException | RuntimeException e) {
+			failed = true;
+			// Reconnect on the next command
+			connection.remove();
+		}
+		long done = System.nanoTime();
+		completed.incrementAndGet();
+		lastCompletion.accumulateAndGet(done, Math::max);
+		if (measured) {
+			correctedLatency.get(name).record(done - intended);
+			serviceTime.get(name).record(done - sent);
+			if (failed) {
+				errors.get(name).incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Opens a connection for the current client thread.
+	 *
+	 * @return the connection
+	 */
+	private AdminClient connect() {
+		try {
+			AdminClient client = new AdminClient("127.0.0.1", port);
+			connections.add(client);
+			return client;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not connect to the admin service: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Picks a command according to the mix.
+	 *
+	 * @param random the source of randomness
+	 * @return the command's name in the mix
+	 */
+	private String pickCommand(Random random) {
+		int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (pick < cumulativeWeights[i]) {
+				return commandNames[i];
+			}
+		}
+		return commandNames[commandNames.length - 1];
+	}
+
+	/**
+	 * Builds the command line for a command of the mix.
+	 *
+	 * @param name the command's name in the mix
+	 * @param random the source of randomness
+	 * @return the command line
+	 */
+	private String commandLine(String name, Random random) {
+		String product = productNames[random.nextInt(productNames.length)];
+		switch (name) {
+			case "RF":
+				return "R {\"prefix\": \"" + product.substring(0, product.indexOf(' ')) + "\", \"limit\": 50}";
+			case "P":
+				return "P [{\"op\": \"adjust\", \"name\": \"" + product + "\", \"delta\": 1}]";
+			default:
+				return name;
+		}
+	}
+
+	/**
+	 * Prints the throughput achieved and the latency percentiles of every command.
+	 *
+	 * @param measureStart when measurement started
+	 */
+	private void report(long measureStart) {
+		long count = 0;
+		long errorCount = 0;
+		for (String name : commandNames) {
+			count += correctedLatency.get(name).getCount();
+			errorCount += errors.get(name).get();
+		}
+		double seconds = Math.max(1e-9, (lastCompletion.get() - measureStart) / 1e9);
+		System.out.println();
+		System.out.printf("Requested %.1f commands/s, achieved %.1f commands/s (%d commands, %d errors in %.1f s)%n",
+				rate, count / seconds, count, errorCount, seconds);
+		System.out.println("Latency from scheduled send time (corrected for coordinated omission), then service time, in ms:");
+		System.out.printf("%-4s %9s %7s %9s %9s %9s %9s %9s | %9s %9s%n",
+				"cmd", "count", "errors", "p50", "p90", "p99", "p999", "max", "svc p50", "svc p99");
+		for (String name : commandNames) {
+			LatencyHistogram corrected = correctedLatency.get(name);
+			LatencyHistogram service = serviceTime.get(name);
+			System.out.printf("%-4s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f | %9.2f %9.2f%n",
+					name, corrected.getCount(), errors.get(name).get(),
+					corrected.getPercentile(0.5) / 1e6, corrected.getPercentile(0.9) / 1e6,
+					corrected.getPercentile(0.99) / 1e6, corrected.getPercentile(0.999) / 1e6,
+					corrected.getMax() / 1e6, service.getPercentile(0.5) / 1e6, service.getPercentile(0.99) / 1e6);
+		}
+	}
+}
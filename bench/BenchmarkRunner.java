@@ -0,0 +1,85 @@
+package bench;
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The BenchmarkRunner class runs the benchmark suites and writes the results of each run as JMH JSON:
+ * <ul>
+ * <li>"contention" runs {@link InventoryBenchmark} once for each thread count, writing for example
+ * bench-results/inventory-4-threads.json.</li>
+ * <li>"load" runs {@link InventoryLoadBenchmark} on one thread with the GC profiler, which adds the
+ * allocation rate to the results, writing bench-results/load.json.</li>
+ * </ul>
+ * Usage: {@code java bench.BenchmarkRunner [contention|load] [threadCount ...]}; without a suite both run,
+ * the default thread counts are 1, 4 and 16, and the {@value #OUTPUT_PROPERTY} system property sets the
+ * output directory.
+ *
+ * @author rargueta
+ */
+public final class BenchmarkRunner {
+
+	/**
+	 * The system property naming the directory the JSON results are written to.
+	 */
+	public static final String OUTPUT_PROPERTY = "bench.output";
+
+	private static final int[] DEFAULT_THREAD_COUNTS = {1, 4, 16};
+
+	private BenchmarkRunner() {
+
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args the suite to run and the thread counts to run the contention suite at
+	 * @throws RunnerException if JMH fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String suite = args.length > 0 && !Character.isDigit(args[0].charAt(0)) ? args[0] : null;
+		int first = suite != null ? 1 : 0;
+		int[] threadCounts = DEFAULT_THREAD_COUNTS;
+		if (args.length > first) {
+			threadCounts = new int[args.length - first];
+			for (int i = first; i < args.length; i++) {
+				threadCounts[i - first] = Integer.parseInt(args[i]);
+			}
+		}
+		File outputDirectory = new File(System.getProperty(OUTPUT_PROPERTY, "bench-results"));
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			System.out.println("Could not create the output directory " + outputDirectory);
+			return;
+		}
+		if (suite == null || suite.equals("contention")) {
+			for (int threads : threadCounts) {
+				File result = new File(outputDirectory, "inventory-" + threads + "-threads.json");
+				Options options = new OptionsBuilder()
+						.include(InventoryBenchmark.class.getName())
+						.threads(threads)
+						.resultFormat(ResultFormatType.JSON)
+						.result(result.getPath())
+						.build();
+				new Runner(options).run();
+				System.out.println("Results for " + threads + " threads written to " + result);
+			}
+		}
+		if (suite == null || suite.equals("load")) {
+			File result = new File(outputDirectory, "load.json");
+			Options options = new OptionsBuilder()
+					.include(InventoryLoadBenchmark.class.getName())
+					.threads(1)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result(result.getPath())
+					.build();
+			new Runner(options).run();
+			System.out.println("Load and serialization results written to " + result);
+		}
+	}
+}
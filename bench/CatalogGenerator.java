@@ -0,0 +1,98 @@
+package bench;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The CatalogGenerator class writes synthetic inventory files in the layout of inventory.json, for
+ * benchmarking startup and bulk updates at catalog sizes no hand-written file reaches.
+ * The mix is 40% weapons, 35% armor, 20% health items and 5% plain products, with names and descriptions
+ * of realistic length. The same size always produces the same file.
+ *
+ * @author rargueta
+ */
+public final class CatalogGenerator {
+
+	private static final String[] MATERIALS = {"Iron", "Steel", "Bronze", "Oak", "Silver", "Obsidian", "Leather", "Mithril"};
+	private static final String[] WEAPONS = {"Sword", "Axe", "Spear", "Mace", "Dagger", "Bow", "Halberd"};
+	private static final String[] ARMOR = {"Helmet", "Chainmail", "Boots", "Gauntlets", "Shield", "Greaves"};
+	private static final String[] HEALTH = {"Potion", "Elixir", "Tonic", "Salve", "Bandage"};
+	private static final String[] GOODS = {"Rope", "Torch", "Lantern", "Map", "Tent"};
+
+	private CatalogGenerator() {
+
+	}
+
+	/**
+	 * Returns a generated catalog of the given size in the temporary directory, writing it if it
+	 * does not exist yet, so that large catalogs are generated once rather than for every trial.
+	 *
+	 * @param products the number of products
+	 * @return the catalog file
+	 * @throws IOException if the catalog cannot be written
+	 */
+	public static File catalog(int products) throws IOException {
+		File file = new File(System.getProperty("java.io.tmpdir"), "storefront-catalog-" + products + ".json");
+		if (!file.isFile()) {
+			File temporary = new File(file.getPath() + ".tmp");
+			write(products, temporary);
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		return file;
+	}
+
+	/**
+	 * Writes a catalog as a JSON object of products keyed by name.
+	 *
+	 * @param products the number of products
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(int products, File file) throws IOException {
+		Random random = new Random(products);
+		try (JsonGenerator generator = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			for (int i = 0; i < products; i++) {
+				int kind = random.nextInt(100);
+				String material = MATERIALS[random.nextInt(MATERIALS.length)];
+				String item;
+				String stat;
+				if (kind < 40) {
+					item = WEAPONS[random.nextInt(WEAPONS.length)];
+					stat = "damage";
+				}
+				else if (kind < 75) {
+					item = ARMOR[random.nextInt(ARMOR.length)];
+					stat = "defense";
+				}
+				else if (kind < 95) {
+					item = HEALTH[random.nextInt(HEALTH.length)];
+					stat = "healthAmount";
+				}
+				else {
+					item = GOODS[random.nextInt(GOODS.length)];
+					stat = null;
+				}
+				String name = material + " " + item + " " + i;
+				generator.writeObjectFieldStart(name);
+				generator.writeStringField("name", name);
+				generator.writeStringField("description", "Finely made " + material.toLowerCase(Locale.ROOT) + " " + item.toLowerCase(Locale.ROOT)
+						+ ", sold by the store since season " + (1 + random.nextInt(40)) + ".");
+				generator.writeNumberField("price", 5 + random.nextInt(995));
+				generator.writeNumberField("quantity", 1 + random.nextInt(50));
+				if (stat != null) {
+					generator.writeNumberField(stat, 1 + random.nextInt(100));
+				}
+				generator.writeEndObject();
+			}
+			generator.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package bench;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storeapp.InventoryManager;
+import storeapp.SalableProduct;
+import storeapp.ShoppingCart;
+import storeapp.StoreFront;
+
+/**
+ * The InventoryBenchmark class measures the throughput of the InventoryManager hot paths while
+ * several threads hit a catalog whose products are picked with Zipfian popularity, so that the
+ * popular products contend for the same locks as they do in the store.
+ * The thread count is chosen by the runner (see {@link BenchmarkRunner}); the catalog size and
+ * skew are JMH parameters.
+ *
+ * @author rargueta
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class InventoryBenchmark {
+
+	/**
+	 * The quantity every product starts with, large enough that no product sells out or
+	 * overflows during a run, which would change the path being measured.
+	 */
+	private static final int INITIAL_QUANTITY = 1_000_000_000;
+
+	/**
+	 * The number of product picks generated up front for each thread. Must be a power of two.
+	 */
+	private static final int KEYS_PER_THREAD = 1 << 16;
+
+	@Param({"1000", "100000", "1000000"})
+	public int catalogSize;
+
+	@Param({"0.99"})
+	public double zipfTheta;
+
+	private InventoryManager inventoryManager;
+	private StoreFront storeFront;
+
+	/** The stocked products, in the order of their popularity rank. */
+	private SalableProduct[] products;
+
+	/** A product with a quantity of 1 and the name of each stocked product, used to restock it. */
+	private SalableProduct[] restocks;
+
+	/**
+	 * Stocks the catalog. Products are ranked in a shuffled order, so the popular ones are spread
+	 * over the catalog rather than being the first ones added.
+	 */
+	@Setup(Level.Trial)
+	public void createCatalog() {
+		inventoryManager = new InventoryManager();
+		storeFront = new StoreFront(inventoryManager);
+		products = new SalableProduct[catalogSize];
+		restocks = new SalableProduct[catalogSize];
+		for (int i = 0; i < catalogSize; i++) {
+			products[i] = new SalableProduct("Product " + i, "Benchmark product", 10 + i % 90, INITIAL_QUANTITY);
+			inventoryManager.addProduct(products[i]);
+		}
+		Random random = new Random(42);
+		for (int i = catalogSize - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			SalableProduct swapped = products[i];
+			products[i] = products[j];
+			products[j] = swapped;
+		}
+		for (int i = 0; i < catalogSize; i++) {
+			restocks[i] = new SalableProduct(products[i].getName(), products[i].getDescription(), products[i].getPrice(), 1);
+		}
+	}
+
+	/**
+	 * The products one thread picks, drawn before the measurement so that drawing them is not measured.
+	 */
+	@State(Scope.Thread)
+	public static class Picks {
+		private static final AtomicInteger SEEDS = new AtomicInteger();
+
+		private final int[] ranks = new int[KEYS_PER_THREAD];
+		private int next;
+		final ShoppingCart cart = new ShoppingCart();
+
+		/**
+		 * Draws this thread's picks.
+		 *
+		 * @param benchmark the benchmark state holding the catalog
+		 */
+		@Setup(Level.Trial)
+		public void draw(InventoryBenchmark benchmark) {
+			ZipfianGenerator generator = new ZipfianGenerator(benchmark.catalogSize, benchmark.zipfTheta);
+			Random random = new Random(SEEDS.incrementAndGet());
+			for (int i = 0; i < ranks.length; i++) {
+				ranks[i] = (int) generator.next(random);
+			}
+		}
+
+		/**
+		 * Returns the next pick.
+		 *
+		 * @return the popularity rank of a product
+		 */
+		int next() {
+			return ranks[next++ & (KEYS_PER_THREAD - 1)];
+		}
+	}
+
+	/**
+	 * Sells one unit of a product.
+	 *
+	 * @param picks the thread's picks
+	 */
+	@Benchmark
+	public void reduceQuantity(Picks picks) {
+		inventoryManager.reduceQuantity(products[picks.next()], 1);
+	}
+
+	/**
+	 * Returns one unit of a product to stock.
+	 *
+	 * @param picks the thread's picks
+	 */
+	@Benchmark
+	public void increaseQuantity(Picks picks) {
+		inventoryManager.increaseQuantity(products[picks.next()], 1);
+	}
+
+	/**
+	 * Restocks one unit of an already stocked product by adding a product with its name.
+	 *
+	 * @param picks the thread's picks
+	 */
+	@Benchmark
+	public void addProduct(Picks picks) {
+		inventoryManager.addProduct(restocks[picks.next()]);
+	}
+
+	/**
+	 * Checks out a cart of three products, one unit each, including filling the cart.
+	 *
+	 * @param picks the thread's picks
+	 * @return whether the sale went through
+	 */
+	@Benchmark
+	public boolean processSale(Picks picks) {
+		ShoppingCart cart = picks.cart;
+		cart.addProduct(products[picks.next()], 1);
+		cart.addProduct(products[picks.next()], 1);
+		cart.addProduct(products[picks.next()], 1);
+		boolean sold = storeFront.processSale(cart);
+		cart.clear();
+		return sold;
+	}
+}
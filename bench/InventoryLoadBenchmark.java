@@ -0,0 +1,138 @@
+package bench;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import adminapp.AdministrationService;
+import storeapp.InventoryManager;
+import storeapp.SalableProduct;
+import storeapp.StoreFront;
+
+/**
+ * The InventoryLoadBenchmark class measures the bulk paths of the store against generated catalogs
+ * (see {@link CatalogGenerator}): loading inventory.json at startup, serializing the inventory for the
+ * R command and parsing an update file for the U command.
+ * Run with the GC profiler (as {@link BenchmarkRunner} does) to get the allocation rate next to the
+ * throughput and the sampled latencies. The 10,000,000 product catalog needs a heap of several gigabytes.
+ *
+ * @author rargueta
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+@State(Scope.Benchmark)
+public class InventoryLoadBenchmark {
+
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int catalogSize;
+
+	private File catalog;
+	private InventoryManager inventoryManager;
+	private AdministrationService service;
+	private SalableProduct changed;
+
+	/**
+	 * Discards the response bytes, counting them so the serialization cannot be optimized away.
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+	}
+
+	/**
+	 * Generates the catalog, loads it and points the U command at it.
+	 *
+	 * @throws IOException if the catalog cannot be generated
+	 */
+	@Setup(Level.Trial)
+	public void loadCatalog() throws IOException {
+		catalog = CatalogGenerator.catalog(catalogSize);
+		inventoryManager = new InventoryManager(catalog.getPath());
+		service = new AdministrationService(new StoreFront(inventoryManager), 0);
+		changed = inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING).iterator().next();
+		System.setProperty(AdministrationService.UPDATE_FILE_PROPERTY, catalog.getPath());
+	}
+
+	/**
+	 * Restores the U command's default file.
+	 */
+	@TearDown(Level.Trial)
+	public void clearUpdateFile() {
+		System.clearProperty(AdministrationService.UPDATE_FILE_PROPERTY);
+	}
+
+	/**
+	 * Loads the catalog into an empty inventory, as the store does at startup without a snapshot.
+	 *
+	 * @return the loaded inventory
+	 */
+	@Benchmark
+	public InventoryManager loadInventoryFromFile() {
+		InventoryManager loaded = new InventoryManager();
+		loaded.loadInventoryFromFile(catalog.getPath(), null);
+		return loaded;
+	}
+
+	/**
+	 * Serializes the inventory for R after a change, so the serialization cache cannot answer.
+	 *
+	 * @return the number of response bytes
+	 * @throws IOException never, the response is discarded
+	 */
+	@Benchmark
+	public long retrieveAfterChange() throws IOException {
+		inventoryManager.increaseQuantity(changed, 1);
+		CountingOutputStream out = new CountingOutputStream();
+		service.writeResponse("R", out);
+		return out.count;
+	}
+
+	/**
+	 * Answers R for an unchanged inventory, which is served from the serialization cache up to its size limit.
+	 *
+	 * @return the number of response bytes
+	 * @throws IOException never, the response is discarded
+	 */
+	@Benchmark
+	public long retrieveUnchanged() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		service.writeResponse("R", out);
+		return out.count;
+	}
+
+	/**
+	 * Runs U with the catalog as the update file, parsing it and restocking every product.
+	 *
+	 * @return the response
+	 */
+	@Benchmark
+	public String update() {
+		return service.processCommand("U");
+	}
+}
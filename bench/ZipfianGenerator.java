@@ -0,0 +1,81 @@
+package bench;
+import java.util.Random;
+
+/**
+ * The ZipfianGenerator class draws item ranks from a Zipfian distribution, in which the item of rank k
+ * is chosen with a probability proportional to 1 / (k + 1)^theta. With theta = 0.99 a few popular
+ * products get most of the traffic, as in a real store; theta = 0 is uniform.
+ * Uses the method of Gray et al., "Quickly Generating Billion-Record Synthetic Databases", which
+ * costs O(n) once to set up and O(1) per draw.
+ *
+ * @author rargueta
+ */
+public final class ZipfianGenerator {
+
+	private final long items;
+	private final double theta;
+	private final double zetaN;
+	private final double alpha;
+	private final double eta;
+	private final double halfPowTheta;
+
+	/**
+	 * Creates a generator over the ranks 0 to items - 1.
+	 *
+	 * @param items the number of items
+	 * @param theta the skew, at least 0 and below 1
+	 */
+	public ZipfianGenerator(long items, double theta) {
+		if (items < 2 || theta < 0 || theta >= 1) {
+			throw new IllegalArgumentException("Need at least 2 items and 0 <= theta < 1");
+		}
+		this.items = items;
+		this.theta = theta;
+		this.zetaN = zeta(items, theta);
+		this.alpha = 1.0 / (1.0 - theta);
+		this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+		this.halfPowTheta = 1 + Math.pow(0.5, theta);
+	}
+
+	/**
+	 * Draws the rank of an item; rank 0 is the most popular.
+	 *
+	 * @param random the source of randomness
+	 * @return a rank between 0 and items - 1
+	 */
+	public long next(Random random) {
+		double u = random.nextDouble();
+		double uz = u * zetaN;
+		if (uz < 1) {
+			return 0;
+		}
+		if (uz < halfPowTheta) {
+			return 1;
+		}
+		return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+	}
+
+	/**
+	 * Returns the skew of the distribution.
+	 *
+	 * @return theta
+	 */
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Computes the generalized harmonic number of order theta.
+	 *
+	 * @param n the number of terms
+	 * @param theta the order
+	 * @return the sum of 1 / i^theta for i from 1 to n
+	 */
+	private static double zeta(long n, double theta) {
+		double sum = 0;
+		for (long i = 1; i <= n; i++) {
+			sum += 1 / Math.pow(i, theta);
+		}
+		return sum;
+	}
+}
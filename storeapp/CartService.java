@@ -0,0 +1,359 @@
+package storeapp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * The CartService class holds the shopping carts of many concurrent shopper sessions, keyed by session id.
+ * A session ends when it has been idle for the timeout, when it is closed, or when it is evicted to make
+ * room for a new one once the maximum number of sessions is reached; that maximum bounds the memory used.
+ *
+ * Idle sessions are found with a hashed timer wheel: each session sits in the bucket of the tick at which
+ * it would expire, and every tick only looks at one bucket. Using a session just records the time, so
+ * lookups stay a single hash map access; a session found in its bucket after being used again is moved
+ * to its new bucket then. Expiry happens between one timeout and one timeout plus one tick after last use.
+ * Eviction takes the session due to expire first, which is the least recently used one up to a tick.
+ *
+ * A cart must only be used by one thread at a time, as a single shopper's session would.
+ * @author rargueta
+ */
+public class CartService {
+
+	/**
+	 * The number of buckets in the wheel. Must be a power of two, and over twice the timeout in ticks
+	 * so that a session is never scheduled a whole turn ahead of an up-to-date wheel. A wheel that fell
+	 * behind can hold sessions due several turns ahead; walks never revisit a bucket, so they still end.
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * The shortest tick, in milliseconds, so that short timeouts do not make the wheel spin needlessly.
+	 */
+	private static final long MIN_TICK_MILLIS = 10;
+
+	/**
+	 * A shopper session, linked into the list of its wheel bucket.
+	 */
+	private static final class Session {
+		final String id;
+		final ShoppingCart cart = new ShoppingCart();
+		volatile long lastAccess;
+
+		// Guarded by the wheel lock
+		Session previous;
+		Session next;
+
+		Session(String id, long now) {
+			this.id = id;
+			this.lastAccess = now;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+	private final int maxSessions;
+	private final long idleTimeoutMillis;
+	private final long tickMillis;
+	private final LongSupplier clock;
+	private final BiConsumer<String, ShoppingCart> endListener;
+
+	/**
+	 * The sentinel heads of the bucket lists, guarded by the wheel lock.
+	 */
+	private final Session[] buckets = new Session[WHEEL_SIZE];
+	private final ReentrantLock wheelLock = new ReentrantLock();
+
+	/**
+	 * The last tick whose bucket was processed, guarded by the wheel lock.
+	 */
+	private long currentTick;
+
+	private ScheduledExecutorService ticker;
+
+	/**
+	 * Creates a cart service on the system clock.
+	 *
+	 * @param maxSessions the most sessions held at once
+	 * @param idleTimeoutMillis how long a session may go unused before it ends
+	 * @param endListener called with the session id and cart of every session that expires or is evicted,
+	 *                    or null; it runs on the thread that ended the session, without any lock held
+	 */
+	public CartService(int maxSessions, long idleTimeoutMillis, BiConsumer<String, ShoppingCart> endListener) {
+		this(maxSessions, idleTimeoutMillis, endListener, System::currentTimeMillis);
+	}
+
+	/**
+	 * Creates a cart service on the given clock.
+	 *
+	 * @param maxSessions the most sessions held at once
+	 * @param idleTimeoutMillis how long a session may go unused before it ends
+	 * @param endListener called with the session id and cart of every session that expires or is evicted, or null
+	 * @param clock the current time in milliseconds
+	 */
+	public CartService(int maxSessions, long idleTimeoutMillis, BiConsumer<String, ShoppingCart> endListener, LongSupplier clock) {
+		if (maxSessions <= 0 || idleTimeoutMillis <= 0) {
+			throw new IllegalArgumentException("The session limit and idle timeout must be positive");
+		}
+		this.maxSessions = maxSessions;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.tickMillis = Math.max(MIN_TICK_MILLIS, idleTimeoutMillis / (WHEEL_SIZE / 4));
+		this.endListener = endListener;
+		this.clock = clock;
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			Session head = new Session(null, 0);
+			head.previous = head;
+			head.next = head;
+			buckets[i] = head;
+		}
+		currentTick = clock.getAsLong() / tickMillis;
+	}
+
+	/**
+	 * Returns the cart of a session, starting the session if it does not exist. Starting a session
+	 * beyond the maximum evicts the session due to expire first.
+	 *
+	 * @param sessionId the session id
+	 * @return the session's cart
+	 */
+	public ShoppingCart openCart(String sessionId) {
+		long now = clock.getAsLong();
+		Session session = sessions.get(sessionId);
+		if (session == null) {
+			Session created = new Session(sessionId, now);
+			session = sessions.putIfAbsent(sessionId, created);
+			if (session == null) {
+				wheelLock.lock();
+				try {
+					schedule(created);
+				}
+				finally {
+					wheelLock.unlock();
+				}
+				if (sessions.size() > maxSessions) {
+					evict(now);
+				}
+				return created.cart;
+			}
+		}
+		session.lastAccess = now;
+		return session.cart;
+	}
+
+	/**
+	 * Returns the cart of a session and marks the session as used.
+	 *
+	 * @param sessionId the session id
+	 * @return the session's cart, or null if there is no such session
+	 */
+	public ShoppingCart getCart(String sessionId) {
+		Session session = sessions.get(sessionId);
+		if (session == null) {
+			return null;
+		}
+		session.lastAccess = clock.getAsLong();
+		return session.cart;
+	}
+
+	/**
+	 * Ends a session, for example after checkout. The end listener is not called.
+	 *
+	 * @param sessionId the session id
+	 * @return the session's cart, or null if there is no such session
+	 */
+	public ShoppingCart closeSession(String sessionId) {
+		Session session = sessions.remove(sessionId);
+		if (session == null) {
+			return null;
+		}
+		wheelLock.lock();
+		try {
+			unlink(session);
+		}
+		finally {
+			wheelLock.unlock();
+		}
+		return session.cart;
+	}
+
+	/**
+	 * Returns the number of sessions held.
+	 *
+	 * @return the number of sessions
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Ends every session idle for the timeout, by processing the wheel's buckets up to the given time.
+	 * Called by the background ticker; tests can call it with their own clock.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return the number of sessions that expired
+	 */
+	public int expire(long now) {
+		List<Session> expired = new ArrayList<>();
+		wheelLock.lock();
+		try {
+			long lastTick = now / tickMillis;
+			// After a long pause every bucket is processed once rather than once per missed tick
+			if (lastTick - currentTick > WHEEL_SIZE) {
+				currentTick = lastTick - WHEEL_SIZE;
+			}
+			while (currentTick < lastTick) {
+				currentTick++;
+				// Detach the bucket's list first, so that a session rescheduled into this bucket is not walked again
+				Session head = buckets[(int) (currentTick & (WHEEL_SIZE - 1))];
+				Session session = head.next;
+				head.next = head;
+				head.previous = head;
+				while (session != head) {
+					Session next = session.next;
+					session.previous = null;
+					session.next = null;
+					// A session closed while it was being started is no longer in the map and is dropped
+					if (sessions.get(session.id) == session) {
+						if (session.lastAccess + idleTimeoutMillis > now) {
+							schedule(session);
+						}
+						else if (sessions.remove(session.id, session)) {
+							expired.add(session);
+						}
+					}
+					session = next;
+				}
+			}
+		}
+		finally {
+			wheelLock.unlock();
+		}
+		notifyEnded(expired);
+		return expired.size();
+	}
+
+	/**
+	 * Starts processing the wheel on a background thread every tick.
+	 */
+	public void start() {
+		ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "cart-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleAtFixedRate(() -> expire(clock.getAsLong()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background thread started by {@link #start()}. The sessions are kept.
+	 */
+	public void stop() {
+		if (ticker != null) {
+			ticker.shutdownNow();
+			ticker = null;
+		}
+	}
+
+	/**
+	 * Evicts sessions, soonest to expire first, until no more than the maximum are held.
+	 * The wheel is first brought up to date, which expires idle sessions and puts every other one within a
+	 * turn of the wheel. Each bucket is then walked at most once, up to the tail it had when the walk
+	 * started, and only sessions due at that bucket's tick are evicted. A session used again since it was
+	 * scheduled is moved to the bucket it is now due in: a later bucket is walked later on, and a move into
+	 * the same bucket goes past the captured tail, so the walk always ends.
+	 *
+	 * @param now the current time in milliseconds
+	 */
+	private void evict(long now) {
+		expire(now);
+		List<Session> evicted = new ArrayList<>();
+		wheelLock.lock();
+		try {
+			for (int offset = 1; offset <= WHEEL_SIZE && sessions.size() > maxSessions; offset++) {
+				long tick = currentTick + offset;
+				Session head = buckets[(int) (tick & (WHEEL_SIZE - 1))];
+				Session tail = head.previous;
+				Session session = head.next;
+				while (session != head && sessions.size() > maxSessions) {
+					Session next = session.next;
+					boolean last = session == tail;
+					if (sessions.get(session.id) != session) {
+						unlink(session);
+					}
+					else if (deadlineTick(session) > tick) {
+						unlink(session);
+						schedule(session);
+					}
+					else if (sessions.remove(session.id, session)) {
+						unlink(session);
+						evicted.add(session);
+					}
+					if (last) {
+						break;
+					}
+					session = next;
+				}
+			}
+		}
+		finally {
+			wheelLock.unlock();
+		}
+		notifyEnded(evicted);
+	}
+
+	/**
+	 * Returns the tick at which a session expires if it is not used again.
+	 * Must be called with the wheel lock held.
+	 *
+	 * @param session the session
+	 * @return the tick, always after the current one
+	 */
+	private long deadlineTick(Session session) {
+		long deadline = session.lastAccess + idleTimeoutMillis;
+		return Math.max(currentTick + 1, (deadline + tickMillis - 1) / tickMillis);
+	}
+
+	/**
+	 * Links a session into the bucket of the tick at which it expires. Must be called with the wheel lock held.
+	 *
+	 * @param session a session not linked into any bucket
+	 */
+	private void schedule(Session session) {
+		Session head = buckets[(int) (deadlineTick(session) & (WHEEL_SIZE - 1))];
+		session.previous = head.previous;
+		session.next = head;
+		head.previous.next = session;
+		head.previous = session;
+	}
+
+	/**
+	 * Unlinks a session from its bucket, if it is in one. Must be called with the wheel lock held.
+	 *
+	 * @param session the session
+	 */
+	private void unlink(Session session) {
+		if (session.next != null) {
+			session.previous.next = session.next;
+			session.next.previous = session.previous;
+			session.previous = null;
+			session.next = null;
+		}
+	}
+
+	/**
+	 * Calls the end listener for sessions that expired or were evicted.
+	 *
+	 * @param ended the sessions
+	 */
+	private void notifyEnded(List<Session> ended) {
+		if (endListener != null) {
+			for (Session session : ended) {
+				endListener.accept(session.id, session.cart);
+			}
+		}
+	}
+}
@@ -1,4 +1,5 @@
 package storeapp;
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 /**
@@ -40,6 +41,7 @@ public class Health extends SalableProduct {
 	 * Sets the amount of health that this health item can restore.
 	 *@param healingAmount the amount of health that this health item can restore
 	 */
+	@JsonAlias("health")
 	public void setHealthAmount(int healthAmount) {
 	    this.healthAmount = healthAmount;
 	}
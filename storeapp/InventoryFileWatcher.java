@@ -0,0 +1,273 @@
+package storeapp;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * The InventoryFileWatcher class keeps a running store in step with edits to inventory.json.
+ * It watches the file's directory with a {@link WatchService} and, when the file changes, streams through
+ * it comparing a fingerprint of every entry with the one seen last time. Only entries whose fingerprint
+ * changed are turned into products and applied to the inventory, and entries that disappeared are removed,
+ * so a large catalog can be refreshed without rebuilding every product.
+ *
+ * A quantity in the file only overrides the live stock level when the quantity itself was edited, so
+ * changing a price does not undo the sales made since the file was written.
+ * A file that cannot be parsed, for example because it is still being written, changes nothing.
+ * @author rargueta
+ */
+public class InventoryFileWatcher implements Closeable {
+
+	/**
+	 * How long to let a burst of file events settle before reading the file.
+	 */
+	private static final long SETTLE_MILLIS = 200;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Path file;
+	private final InventoryManager inventoryManager;
+
+	/**
+	 * The entries of the file as last read, keyed by their JSON key.
+	 */
+	private Map<String, Entry> entries = new HashMap<>();
+
+	private long lastModified;
+	private long lastSize;
+	private WatchService watchService;
+	private Thread watcher;
+
+	/**
+	 * What is remembered about one entry of the file between reloads.
+	 */
+	private static final class Entry {
+		final String productName;
+		final long fingerprint;
+		final int quantity;
+
+		Entry(String productName, long fingerprint, int quantity) {
+			this.productName = productName;
+			this.fingerprint = fingerprint;
+			this.quantity = quantity;
+		}
+	}
+
+	/**
+	 * Creates a watcher for the given inventory file and reads the file's current contents as the baseline
+	 * that later changes are compared with. The inventory is expected to already reflect the file.
+	 *
+	 * @param fileName the path of the inventory file
+	 * @param inventoryManager the inventory to keep up to date
+	 * @throws IOException if the file cannot be read
+	 */
+	public InventoryFileWatcher(String fileName, InventoryManager inventoryManager) throws IOException {
+		this.file = Paths.get(fileName).toAbsolutePath();
+		this.inventoryManager = inventoryManager;
+		scan(false);
+	}
+
+	/**
+	 * Starts watching the file on a background thread.
+	 *
+	 * @throws IOException if the file's directory cannot be watched
+	 */
+	public void start() throws IOException {
+		watchService = file.getFileSystem().newWatchService();
+		file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		watcher = new Thread(this::watchLoop, "inventory-file-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Waits for changes to the file and reloads it after each burst of changes.
+	 */
+	private void watchLoop() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW || file.getFileName().equals(event.context())) {
+						changed = true;
+					}
+				}
+				key.reset();
+				if (changed) {
+					// Editors often write a file in several steps; read it once they are done
+					Thread.sleep(SETTLE_MILLIS);
+					for (WatchKey pending = watchService.poll(); pending != null; pending = watchService.poll()) {
+						pending.pollEvents();
+						pending.reset();
+					}
+					reload();
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			// close() stops the watcher
+		}
+	}
+
+	/**
+	 * Reads the file and applies the entries that changed since it was last read.
+	 *
+	 * @return the number of products that were stocked, changed or removed
+	 */
+	public synchronized int reload() {
+		try {
+			int applied = scan(true);
+			if (applied > 0) {
+				System.out.println("Applied " + applied + " inventory changes from " + file.getFileName());
+			}
+			return applied;
+		}
+		catch (IOException e) {
+			System.out.println("Failed to reload inventory file, keeping the current inventory: " + e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Streams through the file, fingerprinting every entry and decoding the ones that changed.
+	 * Changes are only applied once the whole file has been read successfully.
+	 *
+	 * @param apply false to only record the file's contents as the baseline
+	 * @return the number of products that were stocked, changed or removed
+	 * @throws IOException if the file cannot be read or parsed
+	 */
+	private int scan(boolean apply) throws IOException {
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		long size = Files.size(file);
+		if (apply && modified == lastModified && size == lastSize) {
+			return 0;
+		}
+
+		Map<String, Entry> current = new HashMap<>(Math.max(16, entries.size() * 4 / 3 + 1));
+		List<SalableProduct> changed = new ArrayList<>();
+		List<Boolean> keepQuantities = new ArrayList<>();
+		List<String> removed = new ArrayList<>();
+		try (JsonParser parser = InventoryManager.MAPPER.getFactory().createParser(file.toFile())) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Expected a JSON object of products in " + file);
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String key = parser.getCurrentName();
+				parser.nextToken();
+				TokenBuffer buffer = new TokenBuffer(parser);
+				buffer.copyCurrentStructure(parser);
+				long fingerprint = fingerprint(buffer);
+
+				Entry previous = entries.get(key);
+				if (previous != null && previous.fingerprint == fingerprint) {
+					current.put(key, previous);
+					continue;
+				}
+				JsonParser entryParser = buffer.asParser();
+				entryParser.nextToken();
+				SalableProduct product = InventoryManager.readProduct(entryParser);
+				if (product.getName() == null) {
+					System.out.println("Skipping inventory entry without a name: " + key);
+					continue;
+				}
+				current.put(key, new Entry(product.getName(), fingerprint, product.getQuantity()));
+				if (previous != null && !previous.productName.equals(product.getName())) {
+					removed.add(previous.productName);
+					previous = null;
+				}
+				changed.add(product);
+				keepQuantities.add(previous != null && previous.quantity == product.getQuantity());
+			}
+		}
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			if (!current.containsKey(entry.getKey())) {
+				removed.add(entry.getValue().productName);
+			}
+		}
+
+		int applied = 0;
+		if (apply) {
+			if (!removed.isEmpty()) {
+				// A product may have moved to another key rather than being deleted
+				Set<String> names = new HashSet<>();
+				for (Entry entry : current.values()) {
+					names.add(entry.productName);
+				}
+				for (String productName : removed) {
+					if (!names.contains(productName) && inventoryManager.getProduct(productName) != null) {
+						inventoryManager.removeProduct(productName);
+						applied++;
+					}
+				}
+			}
+			for (int i = 0; i < changed.size(); i++) {
+				if (inventoryManager.replaceProduct(changed.get(i), keepQuantities.get(i))) {
+					applied++;
+				}
+			}
+		}
+		entries = current;
+		lastModified = modified;
+		lastSize = size;
+		return applied;
+	}
+
+	/**
+	 * Computes a 64-bit FNV-1a hash of the tokens of one entry.
+	 *
+	 * @param buffer the buffered tokens of the entry
+	 * @return the fingerprint of the entry
+	 * @throws IOException if the tokens cannot be read
+	 */
+	private static long fingerprint(TokenBuffer buffer) throws IOException {
+		long hash = FNV_OFFSET;
+		try (JsonParser tokens = buffer.asParser()) {
+			for (JsonToken token = tokens.nextToken(); token != null; token = tokens.nextToken()) {
+				hash = (hash ^ token.ordinal()) * FNV_PRIME;
+				if (token == JsonToken.FIELD_NAME || token.isScalarValue()) {
+					String text = tokens.getText();
+					for (int i = 0; i < text.length(); i++) {
+						hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+					}
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Stops watching the file.
+	 *
+	 * @throws IOException if the watch service cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+		if (watcher != null) {
+			watcher.interrupt();
+		}
+	}
+}
@@ -0,0 +1,577 @@
+package storeapp;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The InventoryJournal class is an append-only write-ahead log of inventory changes.
+ * Every change is recorded as its outcome (a product being stocked, a new quantity, or a product being
+ * removed), so replaying the journal over the inventory it started from always rebuilds the same state.
+ *
+ * Appends are cheap: records are queued in memory and a single background thread writes whatever has
+ * queued up and forces it to disk with one fsync (group commit). Callers that need durability wait for
+ * their record's sequence number with {@link #awaitDurable(long)}, so many concurrent sales share one fsync.
+ *
+ * The journal is split into numbered segment files ("inventory.journal.1", "inventory.journal.2", ...).
+ * A checkpoint rolls the journal over to a new segment with {@link #roll()}, writes a snapshot, and then
+ * drops the older segments with {@link #deleteSegmentsBefore(long)}; see {@link InventoryManager#checkpoint(String)}.
+ *
+ * Each segment starts with a header (magic number, format version) followed by records made of an int length,
+ * an int CRC-32 of the body, and the body itself. A torn record at the end of a segment, left by a crash
+ * during a write, is detected by its length or checksum and discarded when the journal is opened.
+ * @author rargueta
+ */
+public class InventoryJournal implements Closeable {
+
+	/**
+	 * Identifies journal files ("FWAJ").
+	 */
+	static final int MAGIC = 0x4657414A;
+
+	/**
+	 * The journal format version written by this class.
+	 */
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 8;
+
+	/** Record type: a product was stocked; the body holds the product as written by {@link InventorySnapshot}. */
+	static final byte OP_UPSERT = 1;
+	/** Record type: a product's quantity changed; the body holds the name and the new quantity. */
+	static final byte OP_SET_QUANTITY = 2;
+	/** Record type: a product was removed; the body holds the name. */
+	static final byte OP_REMOVE = 3;
+
+	/**
+	 * Queued in place of a record to make the flusher continue in a new segment.
+	 */
+	private static final byte[] ROLL = new byte[0];
+
+	/**
+	 * The base name of the segment files.
+	 */
+	private final String fileName;
+
+	/**
+	 * The segment the flusher is writing; only used by the flusher once the journal is open.
+	 */
+	private FileChannel channel;
+
+	private final Thread flusher;
+	private final Object lock = new Object();
+
+	/**
+	 * The records waiting for the next group commit.
+	 */
+	private List<byte[]> pending = new ArrayList<>();
+
+	/**
+	 * The sequence number of the last record appended.
+	 */
+	private long appendedSequence;
+
+	/**
+	 * The sequence number of the last record known to be on disk.
+	 */
+	private long durableSequence;
+
+	/**
+	 * How many group commits (fsyncs) have been made.
+	 */
+	private long syncCount;
+
+	/**
+	 * The number of the segment new records are appended to.
+	 */
+	private long segment;
+
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Creates a journal appending to the given segment, positioned after its last valid record.
+	 *
+	 * @param fileName the base name of the segment files
+	 * @param channel the open segment file
+	 * @param segment the number of the segment
+	 */
+	private InventoryJournal(String fileName, FileChannel channel, long segment) {
+		this.fileName = fileName;
+		this.channel = channel;
+		this.segment = segment;
+		this.flusher = new Thread(this::flushLoop, "inventory-journal");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Opens the journal, replays every valid record of its segments into the given inventory, and returns
+	 * the journal ready for appending to its newest segment. A torn record at the end of a segment is cut off.
+	 * The inventory must not have this journal attached while it is being replayed.
+	 *
+	 * @param fileName the base name of the segment files; the first segment is created if none exists
+	 * @param inventoryManager the inventory to replay the journal into
+	 * @return the opened journal
+	 * @throws IOException if the journal cannot be opened or a segment is not a journal file
+	 */
+	public static InventoryJournal open(String fileName, InventoryManager inventoryManager) throws IOException {
+		TreeMap<Long, Path> segments = findSegments(fileName);
+		if (segments.isEmpty()) {
+			return new InventoryJournal(fileName, createSegment(fileName, 1), 1);
+		}
+		FileChannel channel = null;
+		try {
+			for (Path path : segments.values()) {
+				if (channel != null) {
+					channel.close();
+				}
+				channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				long validLength = replay(channel, path.toString(), inventoryManager);
+				if (validLength < channel.size()) {
+					System.out.println("Discarding " + (channel.size() - validLength) + " bytes of incomplete journal records in " + path);
+					channel.truncate(validLength);
+				}
+				channel.position(validLength);
+			}
+			return new InventoryJournal(fileName, channel, segments.lastKey());
+		}
+		catch (IOException | RuntimeException e) {
+			if (channel != null) {
+				channel.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the segment files of a journal in the order they were written.
+	 *
+	 * @param fileName the base name of the segment files
+	 * @return the paths of the existing segments
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public static List<Path> segmentFiles(String fileName) throws IOException {
+		return new ArrayList<>(findSegments(fileName).values());
+	}
+
+	/**
+	 * Finds the segment files of a journal.
+	 *
+	 * @param fileName the base name of the segment files
+	 * @return the existing segments keyed by segment number
+	 * @throws IOException if the directory cannot be listed
+	 */
+	private static TreeMap<Long, Path> findSegments(String fileName) throws IOException {
+		Path base = Paths.get(fileName).toAbsolutePath();
+		String prefix = base.getFileName() + ".";
+		TreeMap<Long, Path> segments = new TreeMap<>();
+		try (DirectoryStream<Path> directory = Files.newDirectoryStream(base.getParent(), prefix + "*")) {
+			for (Path path : directory) {
+				String suffix = path.getFileName().toString().substring(prefix.length());
+				if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+					segments.put(Long.parseLong(suffix), path);
+				}
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Creates a new, empty segment file holding only the journal header.
+	 *
+	 * @param fileName the base name of the segment files
+	 * @param segment the number of the segment
+	 * @return the segment, positioned after its header
+	 * @throws IOException if the segment cannot be created
+	 */
+	private static FileChannel createSegment(String fileName, long segment) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName + "." + segment), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			channel.force(true);
+			return channel;
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Replays the records of an existing journal file.
+	 *
+	 * @param channel the journal file
+	 * @param fileName the name of the journal, for error messages
+	 * @param inventoryManager the inventory to replay into
+	 * @return the length of the valid part of the file
+	 * @throws IOException if the file is not a journal or cannot be read
+	 */
+	private static long replay(FileChannel channel, String fileName, InventoryManager inventoryManager) throws IOException {
+		if (channel.size() < HEADER_SIZE) {
+			// Created but never given a header; nothing was logged in it
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			return HEADER_SIZE;
+		}
+		channel.position(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+		if (in.readInt() != MAGIC) {
+			throw new IOException(fileName + " is not an inventory journal");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported inventory journal version " + version + " in " + fileName);
+		}
+		long validLength = HEADER_SIZE;
+		long size = channel.size();
+		int replayed = 0;
+		CRC32 crc = new CRC32();
+		while (validLength + 8 <= size) {
+			int length;
+			int checksum;
+			byte[] body;
+			try {
+				length = in.readInt();
+				checksum = in.readInt();
+				if (length <= 0 || validLength + 8 + length > size) {
+					break;
+				}
+				body = new byte[length];
+				in.readFully(body);
+			}
+			catch (EOFException e) {
+				break;
+			}
+			crc.reset();
+			crc.update(body);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			apply(body, inventoryManager);
+			validLength += 8 + length;
+			replayed++;
+		}
+		System.out.println("Replayed " + replayed + " inventory changes from journal: " + fileName + "\n");
+		return validLength;
+	}
+
+	/**
+	 * Applies one journal record to the inventory.
+	 *
+	 * @param body the record body
+	 * @param inventoryManager the inventory to change
+	 * @throws IOException if the record cannot be decoded
+	 */
+	private static void apply(byte[] body, InventoryManager inventoryManager) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		byte op = in.readByte();
+		switch (op) {
+			case OP_UPSERT:
+				SalableProduct product = InventorySnapshot.readProduct(in);
+				if (product != null) {
+					inventoryManager.removeProduct(product.getName());
+					inventoryManager.addProduct(product);
+				}
+				break;
+			case OP_SET_QUANTITY:
+				inventoryManager.setQuantity(in.readUTF(), in.readInt());
+				break;
+			case OP_REMOVE:
+				inventoryManager.removeProduct(in.readUTF());
+				break;
+			default:
+				throw new IOException("Unknown inventory journal record type " + op);
+		}
+	}
+
+	/**
+	 * Records that a product was stocked with its current quantity.
+	 *
+	 * @param product the stocked product
+	 * @return the sequence number of the record
+	 */
+	public long logUpsert(SalableProduct product) {
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeByte(OP_UPSERT);
+			InventorySnapshot.writeProduct(out, product);
+			return append(body.toByteArray());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Records a product's new quantity.
+	 *
+	 * @param productName the name of the product
+	 * @param quantity the new quantity
+	 * @return the sequence number of the record
+	 */
+	public long logSetQuantity(String productName, int quantity) {
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(32 + productName.length());
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeByte(OP_SET_QUANTITY);
+			out.writeUTF(productName);
+			out.writeInt(quantity);
+			return append(body.toByteArray());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Records that a product was removed.
+	 *
+	 * @param productName the name of the product
+	 * @return the sequence number of the record
+	 */
+	public long logRemove(String productName) {
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(16 + productName.length());
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeByte(OP_REMOVE);
+			out.writeUTF(productName);
+			return append(body.toByteArray());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Frames a record body and queues it for the next group commit.
+	 *
+	 * @param body the record body
+	 * @return the sequence number of the record
+	 */
+	private long append(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		byte[] record = new byte[8 + body.length];
+		ByteBuffer.wrap(record).putInt(body.length).putInt((int) crc.getValue()).put(body);
+		synchronized (lock) {
+			if (failure != null) {
+				throw new UncheckedIOException("Inventory journal has failed", failure);
+			}
+			if (closed) {
+				throw new IllegalStateException("Inventory journal is closed");
+			}
+			pending.add(record);
+			appendedSequence++;
+			lock.notifyAll();
+			return appendedSequence;
+		}
+	}
+
+	/**
+	 * Closes the current segment and continues the journal in a new one. Records logged before this call
+	 * end up in the older segments, records logged after it in the new segment.
+	 * Waits until the older segments are complete on disk, but does not hold up logging while it waits.
+	 *
+	 * @return the number of the new segment
+	 * @throws UncheckedIOException if the journal could not be written
+	 */
+	public long roll() {
+		long sequence;
+		long newSegment;
+		synchronized (lock) {
+			if (failure != null) {
+				throw new UncheckedIOException("Inventory journal has failed", failure);
+			}
+			if (closed) {
+				throw new IllegalStateException("Inventory journal is closed");
+			}
+			pending.add(ROLL);
+			sequence = ++appendedSequence;
+			newSegment = ++segment;
+			lock.notifyAll();
+		}
+		awaitDurable(sequence);
+		return newSegment;
+	}
+
+	/**
+	 * Deletes the segments older than the given one, once a checkpoint holds everything logged in them.
+	 *
+	 * @param firstKept the number of the oldest segment to keep, as returned by {@link #roll()}
+	 * @throws IOException if a segment cannot be deleted
+	 */
+	public void deleteSegmentsBefore(long firstKept) throws IOException {
+		for (Path path : findSegments(fileName).headMap(firstKept).values()) {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * Waits until the record with the given sequence number, and every record before it, is on disk.
+	 *
+	 * @param sequence the sequence number returned when the record was logged
+	 * @throws UncheckedIOException if the journal could not be written
+	 */
+	public void awaitDurable(long sequence) {
+		boolean interrupted = false;
+		synchronized (lock) {
+			while (durableSequence < sequence && failure == null) {
+				try {
+					lock.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (durableSequence < sequence) {
+				throw new UncheckedIOException("Inventory journal has failed", failure);
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns how many group commits (fsyncs) the journal has made.
+	 *
+	 * @return the number of fsyncs
+	 */
+	public long getSyncCount() {
+		synchronized (lock) {
+			return syncCount;
+		}
+	}
+
+	/**
+	 * Writes queued records in batches, forcing each batch to disk once.
+	 */
+	private void flushLoop() {
+		while (true) {
+			List<byte[]> batch;
+			long batchSequence;
+			long batchSegment;
+			synchronized (lock) {
+				while (pending.isEmpty() && !closed) {
+					try {
+						lock.wait();
+					}
+					catch (InterruptedException e) {
+						// Only close() stops the flusher
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = new ArrayList<>();
+				batchSequence = appendedSequence;
+				batchSegment = segment;
+			}
+			try {
+				int start = 0;
+				while (start < batch.size()) {
+					int end = start;
+					while (end < batch.size() && batch.get(end) != ROLL) {
+						end++;
+					}
+					write(batch.subList(start, end));
+					if (end < batch.size()) {
+						// Count the rolls in this batch back from the newest segment to number the next one
+						int rollsLeft = 0;
+						for (int i = end; i < batch.size(); i++) {
+							if (batch.get(i) == ROLL) {
+								rollsLeft++;
+							}
+						}
+						channel.close();
+						channel = createSegment(fileName, batchSegment - rollsLeft + 1);
+					}
+					start = end + 1;
+				}
+				synchronized (lock) {
+					durableSequence = batchSequence;
+					lock.notifyAll();
+				}
+			}
+			catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				System.out.println("Failed to write inventory journal: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes a run of records to the current segment and forces them to disk.
+	 *
+	 * @param records the framed records
+	 * @throws IOException if the records cannot be written
+	 */
+	private void write(List<byte[]> records) throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+		ByteBuffer[] buffers = new ByteBuffer[records.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.wrap(records.get(i));
+		}
+		while (buffers[buffers.length - 1].hasRemaining()) {
+			channel.write(buffers);
+		}
+		channel.force(false);
+		synchronized (lock) {
+			syncCount++;
+		}
+	}
+
+	/**
+	 * Writes every queued record to disk and closes the journal.
+	 *
+	 * @throws IOException if the journal cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			flusher.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+}
@@ -1,49 +1,542 @@
 package storeapp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 
 
 /**
  * The InventoryManager class represents a collection of salable products
  * available for purchase in a store.
+ * The inventory is shared between the store front and the administration service, so every
+ * quantity update is performed under a per-product lock stripe to avoid lost updates and overselling.
+ * Stock levels are kept in a {@link StockLedger} indexed by dense SKU id, so sales and restocks
+ * are primitive array updates that do not touch the product map or allocate.
+ * An inventory opened with {@link #mapSnapshot(String)} decodes products from a memory-mapped
+ * snapshot the first time they are used instead of loading the whole catalog up front.
+ * When an {@link InventoryJournal} is attached, every change is logged while its stripe is held and
+ * the changing method returns once the change is durable.
  * @author rargueta
  */
 public class InventoryManager {
 
+	/**
+	 * The orders in which the inventory can be listed.
+	 */
+	public enum SortOrder {
+		NAME_ASCENDING,
+		NAME_DESCENDING,
+		PRICE_ASCENDING,
+		PRICE_DESCENDING
+	}
+
+	/**
+	 * Orders products alphabetically by name.
+	 */
+	private static final Comparator<SalableProduct> BY_NAME = Comparator.comparing(SalableProduct::getName);
+
+	/**
+	 * Orders products by price, breaking ties by name so that every stocked product has a distinct position.
+	 */
+	private static final Comparator<SalableProduct> BY_PRICE = Comparator.comparingInt(SalableProduct::getPrice).thenComparing(BY_NAME);
+
+	/**
+	 * The stock held for one cart. The reserved quantities are a cart of their own, so they are kept
+	 * per SKU without boxing. The contents are guarded by the reservation's monitor, which is taken
+	 * before any stripe.
+	 */
+	private static final class Reservation {
+		final ShoppingCart cart;
+		final ShoppingCart lines = new ShoppingCart();
+		volatile long deadline;
+		boolean released;
+
+		// Guarded by the reservation lock
+		long queuedDeadline;
+		boolean queued;
+
+		Reservation(ShoppingCart cart) {
+			this.cart = cart;
+		}
+	}
+
+	/**
+	 * The number of lock stripes guarding product quantities. Must be a power of two.
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * How many products are loaded between two progress reports.
+	 */
+	private static final int PROGRESS_INTERVAL = 100_000;
+
+	/**
+	 * The shared, thread-safe JSON mapper used to read products.
+	 */
+	static final ObjectMapper MAPPER = new ObjectMapper();
+
     /** 
      * The list of salable products in the inventory. 
      */	
-	private Map<String, SalableProduct> inventory;
+	private final ConcurrentHashMap<String, SalableProduct> inventory;
+
+	/**
+	 * The locks guarding quantity updates; a product is always guarded by the same stripe.
+	 */
+	private final ReentrantLock[] stripes;
+
+	/**
+	 * The SKU ids of the product names this inventory has stocked.
+	 */
+	private final SkuRegistry skus;
+
+	/**
+	 * The stock level of every product in the inventory, indexed by SKU id.
+	 */
+	private final StockLedger ledger;
+
+	/**
+	 * The quantity of every product held by reservations, indexed by SKU id and guarded by the product's stripe.
+	 */
+	private final StockLedger reserved;
+
+	/**
+	 * The stock held for each cart; see {@link #reserve(ShoppingCart, SalableProduct, int, long)}.
+	 */
+	private final ConcurrentHashMap<ShoppingCart, Reservation> reservations;
+
+	/**
+	 * The reservations ordered by the deadline they were queued with, guarded by the reservation lock.
+	 * A reservation extended after it was queued is queued again when its old deadline comes up.
+	 */
+	private final PriorityQueue<Reservation> reservationExpiries;
+	private final ReentrantLock reservationLock;
+
+	/**
+	 * The products in the inventory keyed by their normalized (lower-case) name, for case-insensitive lookups.
+	 */
+	private final ConcurrentHashMap<String, SalableProduct> nameIndex;
+
+	/**
+	 * The products in the inventory sorted by name, maintained as products are added and removed.
+	 */
+	private final ConcurrentSkipListSet<SalableProduct> sortedByName;
+
+	/**
+	 * The products in the inventory sorted by price, maintained as products are added and removed.
+	 */
+	private final ConcurrentSkipListSet<SalableProduct> sortedByPrice;
+
+	/**
+	 * The memory-mapped catalog holding products that have not been used yet, or null once every product is on the heap.
+	 */
+	private volatile LazyCatalog lazyCatalog;
+
+	/**
+	 * The write-ahead log that changes are recorded in, or null if changes are not persisted.
+	 */
+	private volatile InventoryJournal journal;
+
+	/**
+	 * Counts the changes made to the inventory; see {@link #getVersion()}.
+	 */
+	private final AtomicLong version = new AtomicLong();
 	 
 	 /**
 	  * Constructs a new inventory manager and initializes the inventory by loading the data from the specified inventory file.
 	  * @param inventoryFilePath the path to the inventory file
 	  */
 	 public InventoryManager(String fileName) {
-		 inventory = new HashMap<>();
+		 this();
 		 loadInventoryFromFile(fileName);
 		 
 	 }
 
+	 /**
+	  * Constructs a new inventory manager with an empty inventory.
+	  */
+	 public InventoryManager() {
+		 inventory = new ConcurrentHashMap<>();
+		 skus = new SkuRegistry();
+		 ledger = new StockLedger();
+		 reserved = new StockLedger();
+		 reservations = new ConcurrentHashMap<>();
+		 reservationExpiries = new PriorityQueue<>(Comparator.comparingLong((Reservation reservation) -> reservation.queuedDeadline));
+		 reservationLock = new ReentrantLock();
+		 nameIndex = new ConcurrentHashMap<>();
+		 sortedByName = new ConcurrentSkipListSet<>(BY_NAME);
+		 sortedByPrice = new ConcurrentSkipListSet<>(BY_PRICE);
+		 stripes = new ReentrantLock[LOCK_STRIPES];
+		 for (int i = 0; i < LOCK_STRIPES; i++) {
+			 stripes[i] = new ReentrantLock();
+		 }
+	 }
+
+	 /**
+	  * Constructs a new inventory manager from a binary snapshot written by {@link #saveSnapshot(String)}.
+	  *
+	  * @param fileName the path to the snapshot file
+	  * @return the inventory manager holding the products of the snapshot
+	  * @throws IOException if the snapshot cannot be read
+	  */
+	 public static InventoryManager fromSnapshot(String fileName) throws IOException {
+		 InventoryManager inventoryManager = new InventoryManager();
+		 int loaded = InventorySnapshot.read(fileName, inventoryManager);
+		 System.out.println("Inventory loaded successfully from snapshot: " + fileName + " (" + loaded + " products)\n");
+		 return inventoryManager;
+	 }
+
+	 /**
+	  * Constructs a new inventory manager that memory-maps a binary snapshot written by {@link #saveSnapshot(String)}.
+	  * Only an index of product names is built up front; each product is decoded from the mapped file the first
+	  * time it is looked up, sold or restocked. Operations that need every product, such as {@link #getInventory()}
+	  * and {@link #getSortedProducts(SortOrder)}, materialize the rest of the catalog first.
+	  *
+	  * @param fileName the path to the snapshot file
+	  * @return the inventory manager backed by the mapped snapshot
+	  * @throws IOException if the snapshot cannot be mapped
+	  */
+	 public static InventoryManager mapSnapshot(String fileName) throws IOException {
+		 InventoryManager inventoryManager = new InventoryManager();
+		 LazyCatalog catalog = new LazyCatalog(fileName);
+		 if (!catalog.isEmpty()) {
+			 inventoryManager.lazyCatalog = catalog;
+		 }
+		 System.out.println("Inventory mapped successfully from snapshot: " + fileName + " (" + catalog.remaining() + " products)\n");
+		 return inventoryManager;
+	 }
+
+	 /**
+	  * Attaches the write-ahead log that every later change to the inventory is recorded in.
+	  *
+	  * @param journal the journal to record changes in, or null to stop recording
+	  */
+	 public void setJournal(InventoryJournal journal) {
+		 this.journal = journal;
+	 }
+
+	 /**
+	  * Returns the write-ahead log that changes are recorded in.
+	  *
+	  * @return the attached journal, or null if changes are not persisted
+	  */
+	 public InventoryJournal getJournal() {
+		 return journal;
+	 }
+
 	 /**
 	  * Returns the inventory map.
+	  * The map is safe to read while sales are in progress; quantities should be changed
+	  * through this manager rather than directly on the returned products.
 	  *
 	  * @return the inventory map
 	  */
 	  
 	 public Map<String, SalableProduct> getInventory() {
+	        materializeAll();
 	        return inventory;
 	 }
 
+	 /**
+	  * Returns the version of the inventory, which increases with every change to a product or quantity.
+	  * The version is bumped after the change is visible, so anything read after reading a version
+	  * reflects at least that version; views of the inventory can be cached until the version moves on.
+	  *
+	  * @return the current version
+	  */
+	 public long getVersion() {
+		 return version.get();
+	 }
+
+	 /**
+	  * Returns the number of product names this inventory has assigned SKU ids to, including removed products.
+	  *
+	  * @return the size of the inventory's {@link SkuRegistry}
+	  */
+	 public int getSkuCount() {
+		 return skus.size();
+	 }
+
+	 /**
+	  * Returns a read-only, sorted view of the products in the inventory.
+	  * The views are kept sorted as products are added and removed, so listing the inventory
+	  * is a walk over the view rather than a copy and sort. The view may be read while sales
+	  * are in progress and reflects the inventory at some point during the iteration.
+	  *
+	  * @param order the order in which the products should be listed
+	  * @return the products in the requested order
+	  */
+	 public Collection<SalableProduct> getSortedProducts(SortOrder order) {
+		 materializeAll();
+		 switch (order) {
+			 case NAME_DESCENDING:
+				 return Collections.unmodifiableSet(sortedByName.descendingSet());
+			 case PRICE_ASCENDING:
+				 return Collections.unmodifiableSet(sortedByPrice);
+			 case PRICE_DESCENDING:
+				 return Collections.unmodifiableSet(sortedByPrice.descendingSet());
+			 case NAME_ASCENDING:
+			 default:
+				 return Collections.unmodifiableSet(sortedByName);
+		 }
+	 }
+
+	 /**
+	  * Returns the products from the given name onwards in ascending name order, as a live, weakly consistent view.
+	  * Listings can be walked page by page with it, each page starting after the last name of the previous one,
+	  * without copying the catalog.
+	  *
+	  * @param fromName the name to start at, or null to start with the first product
+	  * @param inclusive whether a product with exactly that name is included
+	  * @return an unmodifiable view of the products from that name onwards
+	  */
+	 public Collection<SalableProduct> getProductsByNameFrom(String fromName, boolean inclusive) {
+		 materializeAll();
+		 if (fromName == null) {
+			 return Collections.unmodifiableSet(sortedByName);
+		 }
+		 return Collections.unmodifiableSet(sortedByName.tailSet(new SalableProduct(fromName, null, 0, 0), inclusive));
+	 }
+
+	 /**
+	  * Finds a product in the inventory by name, ignoring case.
+	  * The lookup takes constant time regardless of the size of the catalog.
+	  *
+	  * @param productName the name of the product, in any case
+	  * @return the stocked product, or null if no product with that name is in stock
+	  */
+	 public SalableProduct findProduct(String productName) {
+		 String normalizedName = normalizeName(productName);
+		 SalableProduct product = nameIndex.get(normalizedName);
+		 if (product == null && lazyCatalog != null) {
+			 materialize(productName, true);
+			 product = nameIndex.get(normalizedName);
+		 }
+		 return product;
+	 }
+
+	 /**
+	  * Returns the stocked product with exactly the given name.
+	  *
+	  * @param productName the name of the product
+	  * @return the stocked product, or null if no product with that name is in stock
+	  */
+	 public SalableProduct getProduct(String productName) {
+		 materialize(productName);
+		 return inventory.get(productName);
+	 }
+
+	 /**
+	  * Moves the product with the given name from the mapped catalog onto the heap, if it is still there.
+	  * Must be called before taking any stripe, since stocking the product takes its own stripe.
+	  *
+	  * @param productName the exact name of the product
+	  */
+	 private void materialize(String productName) {
+		 materialize(productName, false);
+	 }
+
+	 /**
+	  * Moves the product with the given name from the mapped catalog onto the heap, if it is still there.
+	  * Must be called before taking any stripe, since stocking the product takes its own stripe.
+	  *
+	  * @param productName the name of the product
+	  * @param ignoreCase whether a product whose name only differs in case will do
+	  */
+	 private void materialize(String productName, boolean ignoreCase) {
+		 LazyCatalog catalog = lazyCatalog;
+		 if (catalog == null) {
+			 return;
+		 }
+		 SalableProduct product = ignoreCase ? catalog.takeIgnoringCase(productName) : catalog.take(productName);
+		 if (product != null) {
+			 // Adding rather than stocking keeps the snapshot's quantity even if the name was restocked meanwhile
+			 addProduct(product, true);
+		 }
+		 if (catalog.isEmpty()) {
+			 lazyCatalog = null;
+		 }
+	 }
+
+	 /**
+	  * Moves every product still in the mapped catalog onto the heap.
+	  */
+	 private void materializeAll() {
+		 LazyCatalog catalog = lazyCatalog;
+		 if (catalog == null) {
+			 return;
+		 }
+		 for (String productName : catalog.remainingNames()) {
+			 materialize(productName);
+		 }
+	 }
+
+	 /**
+	  * Returns the normalized form of a product name used for case-insensitive lookups.
+	  *
+	  * @param productName the name of the product
+	  * @return the normalized name
+	  */
+	 static String normalizeName(String productName) {
+		 return productName.toLowerCase(Locale.ROOT);
+	 }
+
+	 /**
+	  * Returns the lock stripe guarding the product with the given SKU id.
+	  *
+	  * @param skuId the SKU id of the product
+	  * @return the lock guarding the product's quantity
+	  */
+	 private ReentrantLock stripeFor(int skuId) {
+		 return stripes[skuId & (LOCK_STRIPES - 1)];
+	 }
+
+	 /**
+	  * Stocks the given product under its name with the given quantity.
+	  * Must be called while holding the product's stripe.
+	  *
+	  * @param product the product to stock
+	  * @param quantity the quantity in stock
+	  * @return the journal sequence number of the change, or 0 if no journal is attached
+	  */
+	 private long stock(SalableProduct product, int quantity) {
+		 stockUnlogged(product, quantity);
+		 InventoryJournal log = journal;
+		 return log != null ? log.logUpsert(product) : 0;
+	 }
+
+	 /**
+	  * Stocks a product like {@link #stock(SalableProduct, int)} without recording it in the journal.
+	  *
+	  * @param product the product to stock
+	  * @param quantity the quantity in stock
+	  */
+	 private void stockUnlogged(SalableProduct product, int quantity) {
+		 int skuId = skuIdOf(product);
+		 ledger.set(skuId, quantity);
+		 product.attach(this, ledger, skuId);
+		 inventory.put(product.getName(), product);
+		 nameIndex.put(normalizeName(product.getName()), product);
+		 sortedByName.add(product);
+		 sortedByPrice.add(product);
+		 version.incrementAndGet();
+	 }
+
+	 /**
+	  * Removes the product with the given name and SKU id from the inventory.
+	  * Must be called while holding the product's stripe.
+	  *
+	  * @param productName the name of the product
+	  * @param skuId the SKU id of the product
+	  * @param remaining the quantity the removed product object should report afterwards
+	  * @return the journal sequence number of the change, or 0 if nothing was removed or no journal is attached
+	  */
+	 private long unstock(String productName, int skuId, int remaining) {
+		 SalableProduct storedProduct = inventory.remove(productName);
+		 ledger.set(skuId, StockLedger.ABSENT);
+		 if (storedProduct == null) {
+			 return 0;
+		 }
+		 nameIndex.remove(normalizeName(productName), storedProduct);
+		 sortedByName.remove(storedProduct);
+		 sortedByPrice.remove(storedProduct);
+		 storedProduct.detach(remaining);
+		 version.incrementAndGet();
+		 InventoryJournal log = journal;
+		 return log != null ? log.logRemove(productName) : 0;
+	 }
+
+	 /**
+	  * Records a product's new quantity in the journal, if one is attached, and bumps the version.
+	  * Must be called after every quantity change, while holding the product's stripe so that changes are
+	  * logged in the order they were made.
+	  *
+	  * @param productName the name of the product
+	  * @param quantity the new quantity
+	  * @return the journal sequence number of the change, or 0 if no journal is attached
+	  */
+	 private long logQuantity(String productName, int quantity) {
+		 version.incrementAndGet();
+		 InventoryJournal log = journal;
+		 return log != null ? log.logSetQuantity(productName, quantity) : 0;
+	 }
+
+	 /**
+	  * Waits until the journaled change with the given sequence number is on disk.
+	  * Called after releasing all stripes, so that other sales can be logged into the same group commit.
+	  *
+	  * @param sequence the journal sequence number, or 0 if nothing was logged
+	  */
+	 private void awaitDurable(long sequence) {
+		 InventoryJournal log = journal;
+		 if (sequence > 0 && log != null) {
+			 log.awaitDurable(sequence);
+		 }
+	 }
+
+	 /**
+	  * Acquires the lock stripes guarding all of the given products.
+	  * Stripes are always taken in ascending index order so that concurrent multi-product
+	  * operations cannot deadlock, and each stripe is taken only once.
+	  *
+	  * @param skuIds the SKU ids of the products to lock
+	  * @return the acquired locks, to be passed to {@link #unlockStripes(ReentrantLock[])}
+	  */
+	 private ReentrantLock[] lockStripes(Collection<Integer> skuIds) {
+		 boolean[] needed = new boolean[LOCK_STRIPES];
+		 int count = 0;
+		 for (int skuId : skuIds) {
+			 int index = skuId & (LOCK_STRIPES - 1);
+			 if (!needed[index]) {
+				 needed[index] = true;
+				 count++;
+			 }
+		 }
+		 ReentrantLock[] locks = new ReentrantLock[count];
+		 int next = 0;
+		 for (int i = 0; i < LOCK_STRIPES; i++) {
+			 if (needed[i]) {
+				 stripes[i].lock();
+				 locks[next++] = stripes[i];
+			 }
+		 }
+		 return locks;
+	 }
+
+	 /**
+	  * Releases locks acquired by {@link #lockStripes(Collection)} in reverse order.
+	  *
+	  * @param locks the locks to release
+	  */
+	 private void unlockStripes(ReentrantLock[] locks) {
+		 for (int i = locks.length - 1; i >= 0; i--) {
+			 locks[i].unlock();
+		 }
+	 }
+
 	 /**
 	  * Updates the inventory with the given map of salable products and their quantities.
 	  *
@@ -51,41 +544,513 @@ public class InventoryManager {
 	  */
 	   
 	 public void updateInventory(ShoppingCart cart) {
-		    Map<SalableProduct, Integer> products = cart.getProducts();
-		    for (SalableProduct product : products.keySet()) {
-		        int quantity = products.get(product);
-		        increaseQuantity(product, quantity);
-		    }
+		    cart.forEach(this::increaseQuantity);
 		}
 	    
 	/**
 	 * Reduces the quantity of the specified salable product in the inventory by the given amount.
+	 * The product is removed from the inventory when its stock is used up. Stock reserved for carts
+	 * (see {@link #reserve(ShoppingCart, SalableProduct, int, long)}) is never taken: the quantity
+	 * does not drop below the reserved quantity.
 	 *
 	 * @param product the salable product to reduce the quantity of
 	 * @param amount the amount to reduce the quantity by
 	 */
 	 public void reduceQuantity(SalableProduct product, int quantity) {
-	        String productName = product.getName();
-	        if (inventory.containsKey(productName)) {
-	            SalableProduct storedProduct = inventory.get(productName);
-	            int currentQuantity = storedProduct.getQuantity();
-	            if (currentQuantity <= quantity) {
-	                inventory.remove(productName);
-	            } 
+	        materialize(product.getName());
+	        int skuId = skuIdOf(product);
+	        long sequence = 0;
+	        ReentrantLock lock = stripeFor(skuId);
+	        lock.lock();
+	        try {
+	            int currentQuantity = ledger.get(skuId);
+	            if (currentQuantity != StockLedger.ABSENT) {
+	                int remaining = Math.max(reservedOf(skuId), currentQuantity - quantity);
+	                if (remaining == 0) {
+	                    sequence = unstock(product.getName(), skuId, 0);
+	                }
+	                else if (remaining != currentQuantity) {
+	                    ledger.set(skuId, remaining);
+	                    sequence = logQuantity(product.getName(), remaining);
+	                }
+	            }
+	        }
+	        finally {
+	            lock.unlock();
+	        }
+	        awaitDurable(sequence);
+	    }
+
+	/**
+	 * Atomically reduces the quantity of the specified salable product, but only if enough stock is available.
+	 * Unlike {@link #reduceQuantity(SalableProduct, int)} this never sells more than is available: either the whole
+	 * quantity is taken from stock not reserved for carts, or nothing is.
+	 *
+	 * @param product the salable product to reduce the quantity of
+	 * @param quantity the amount to reduce the quantity by
+	 * @return true if the stock was reduced, false if the product is missing or there is not enough stock
+	 */
+	 public boolean tryReduceQuantity(SalableProduct product, int quantity) {
+	        materialize(product.getName());
+	        int skuId = skuIdOf(product);
+	        long sequence;
+	        ReentrantLock lock = stripeFor(skuId);
+	        lock.lock();
+	        try {
+	            int currentQuantity = ledger.get(skuId);
+	            if (currentQuantity == StockLedger.ABSENT || currentQuantity - reservedOf(skuId) < quantity) {
+	                return false;
+	            }
+	            int remaining = currentQuantity - quantity;
+	            if (remaining == 0) {
+	                sequence = unstock(product.getName(), skuId, 0);
+	            }
 	            else {
-	                storedProduct.setQuantity(currentQuantity - quantity);
+	                ledger.set(skuId, remaining);
+	                sequence = logQuantity(product.getName(), remaining);
 	            }
 	        }
+	        finally {
+	            lock.unlock();
+	        }
+	        awaitDurable(sequence);
+	        return true;
 	    }
-	 
+
 	 /**
 	  * This method processes a sale by reducing the quantity of salable products in the inventory based on the
 	  * contents of a given shopping cart.
+	  * The sale is all-or-nothing: every product in the cart is locked and checked first, and the
+	  * inventory is only changed if all of them are in stock in the requested quantities.
+	  * Stock reserved for the cart (see {@link #reserve(ShoppingCart, SalableProduct, int, long)}) is sold first
+	  * and the rest of the cart's reservation is released; stock reserved for other carts is never sold.
 	  * @param cart the shopping cart containing the products to be sold
+	  * @return true if the sale was completed, false if any product was unavailable and nothing was sold
 	  */
 	 
-	 public void processSale(ShoppingCart cart) {
-		    Map<SalableProduct, Integer> products = cart.getProducts();
+	 public boolean processSale(ShoppingCart cart) {
+		    Reservation reservation = reservations.get(cart);
+		    long sequence;
+		    if (reservation == null) {
+		        sequence = sell(cart, null);
+		    }
+		    else {
+		        synchronized (reservation) {
+		            sequence = sell(cart, reservation.released ? null : reservation);
+		        }
+		    }
+		    if (sequence < 0) {
+		        return false;
+		    }
+		    // Sequence numbers only grow, so waiting for the last line covers the whole sale
+		    awaitDurable(sequence);
+		    return true;
+		}
+
+	 /**
+	  * Sells a cart for {@link #processSale(ShoppingCart)}, turning the cart's reservation into the sale.
+	  *
+	  * @param cart the shopping cart containing the products to be sold
+	  * @param reservation the cart's reservation, locked by the caller, or null
+	  * @return the journal sequence number of the last change, 0 if nothing was logged, or -1 if the sale was rejected
+	  */
+	 private long sell(ShoppingCart cart, Reservation reservation) {
+		    // The cart has one line per SKU id
+		    Map<Integer, Integer> lines = new HashMap<>();
+		    Map<Integer, String> names = new HashMap<>();
+		    Map<Integer, Integer> held = new HashMap<>();
+		    cart.forEach((product, quantity) -> {
+		        materialize(product.getName());
+		        lines.put(skuIdOf(product), quantity);
+		        names.put(skuIdOf(product), product.getName());
+		    });
+		    if (reservation != null) {
+		        reservation.lines.forEach((product, quantity) -> held.put(skuIdOf(product), quantity));
+		    }
+		    Set<Integer> skuIds = new HashSet<>(lines.keySet());
+		    skuIds.addAll(held.keySet());
+
+		    long sequence = 0;
+		    ReentrantLock[] locks = lockStripes(skuIds);
+		    try {
+		        // Reserve: make sure every line can be filled before changing anything
+		        for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+		            int skuId = line.getKey();
+		            int currentQuantity = ledger.get(skuId);
+		            int available = currentQuantity - reservedOf(skuId) + held.getOrDefault(skuId, 0);
+		            if (currentQuantity == StockLedger.ABSENT || available < line.getValue()) {
+		                return -1;
+		            }
+		        }
+
+		        // Commit: no other sale can touch these products while we hold their stripes
+		        for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+		            int skuId = line.getKey();
+		            int remaining = ledger.get(skuId) - line.getValue();
+		            if (remaining == 0) {
+		                sequence = unstock(names.get(skuId), skuId, 0);
+		            }
+		            else {
+		                ledger.set(skuId, remaining);
+		                sequence = logQuantity(names.get(skuId), remaining);
+		            }
+		        }
+		        for (Map.Entry<Integer, Integer> line : held.entrySet()) {
+		            reserved.set(line.getKey(), reservedOf(line.getKey()) - line.getValue());
+		        }
+		    }
+		    finally {
+		        unlockStripes(locks);
+		    }
+		    if (reservation != null) {
+		        reservation.released = true;
+		        reservations.remove(cart, reservation);
+		    }
+		    return sequence;
+		}
+
+	 /**
+	  * Holds stock of a product for a cart until the cart is sold, the reservation is released or it expires.
+	  * Reserved stock stays in the inventory's quantity but cannot be sold to other carts. Every reservation
+	  * made for a cart moves the expiry of all of the cart's reserved stock to the given time from now.
+	  *
+	  * @param cart the cart the stock is held for
+	  * @param product the product to reserve
+	  * @param quantity the quantity to reserve
+	  * @param ttlMillis how long the cart's reservation is held, in milliseconds
+	  * @return true if the stock was reserved, false if the product is missing or not enough of it is unreserved
+	  */
+	 public boolean reserve(ShoppingCart cart, SalableProduct product, int quantity, long ttlMillis) {
+		    materialize(product.getName());
+		    int skuId = skuIdOf(product);
+		    long deadline = System.currentTimeMillis() + ttlMillis;
+		    while (true) {
+		        Reservation reservation = reservations.computeIfAbsent(cart, Reservation::new);
+		        synchronized (reservation) {
+		            // An expired reservation is being released; start a new one
+		            if (reservation.released) {
+		                continue;
+		            }
+		            ReentrantLock lock = stripeFor(skuId);
+		            lock.lock();
+		            try {
+		                int currentQuantity = ledger.get(skuId);
+		                if (currentQuantity == StockLedger.ABSENT || currentQuantity - reservedOf(skuId) < quantity) {
+		                    return false;
+		                }
+		                reserved.set(skuId, reservedOf(skuId) + quantity);
+		            }
+		            finally {
+		                lock.unlock();
+		            }
+		            reservation.lines.addProduct(product, quantity);
+		            reservation.deadline = deadline;
+		        }
+		        queueExpiry(reservation);
+		        return true;
+		    }
+		}
+
+	 /**
+	  * Releases part of the stock reserved for a cart, for example when a unit is taken out of the cart.
+	  *
+	  * @param cart the cart the stock is held for
+	  * @param product the product to release
+	  * @param quantity the most units to release
+	  * @return the number of units released
+	  */
+	 public int releaseReservation(ShoppingCart cart, SalableProduct product, int quantity) {
+		    Reservation reservation = reservations.get(cart);
+		    if (reservation == null) {
+		        return 0;
+		    }
+		    synchronized (reservation) {
+		        int released = reservation.released ? 0 : Math.min(quantity, reservation.lines.getQuantity(product));
+		        if (released > 0) {
+		            int skuId = skuIdOf(product);
+		            ReentrantLock lock = stripeFor(skuId);
+		            lock.lock();
+		            try {
+		                reserved.set(skuId, reservedOf(skuId) - released);
+		            }
+		            finally {
+		                lock.unlock();
+		            }
+		            reservation.lines.removeProduct(product, released);
+		        }
+		        return released;
+		    }
+		}
+
+	 /**
+	  * Releases all stock reserved for a cart, for example when the cart is emptied or its session ends.
+	  *
+	  * @param cart the cart the stock is held for
+	  */
+	 public void releaseReservations(ShoppingCart cart) {
+		    Reservation reservation = reservations.get(cart);
+		    if (reservation != null) {
+		        synchronized (reservation) {
+		            release(reservation);
+		        }
+		    }
+		}
+
+	 /**
+	  * Releases every reservation whose time ran out. Reservations are kept in a queue ordered by expiry,
+	  * so a sweep only looks at the ones that are due.
+	  *
+	  * @param now the current time in milliseconds
+	  * @return the number of reservations released
+	  */
+	 public int releaseExpiredReservations(long now) {
+		    List<Reservation> due = new ArrayList<>();
+		    reservationLock.lock();
+		    try {
+		        while (!reservationExpiries.isEmpty() && reservationExpiries.peek().queuedDeadline <= now) {
+		            Reservation reservation = reservationExpiries.poll();
+		            reservation.queued = false;
+		            due.add(reservation);
+		        }
+		    }
+		    finally {
+		        reservationLock.unlock();
+		    }
+		    int expired = 0;
+		    for (Reservation reservation : due) {
+		        synchronized (reservation) {
+		            if (reservation.released) {
+		                continue;
+		            }
+		            if (reservation.deadline <= now) {
+		                release(reservation);
+		                expired++;
+		                continue;
+		            }
+		        }
+		        // Extended by a later reservation since it was queued
+		        queueExpiry(reservation);
+		    }
+		    return expired;
+		}
+
+	 /**
+	  * Returns the quantity of a product held by reservations.
+	  *
+	  * @param product the product
+	  * @return the reserved quantity
+	  */
+	 public int getReservedQuantity(SalableProduct product) {
+		    return reservedOf(skuIdOf(product));
+		}
+
+	 /**
+	  * Returns the quantity of a product that can still be reserved or sold to a cart without a reservation.
+	  *
+	  * @param product the product
+	  * @return the quantity in stock less the reserved quantity, or 0 if the product is not stocked
+	  */
+	 public int getAvailableQuantity(SalableProduct product) {
+		    materialize(product.getName());
+		    int skuId = skuIdOf(product);
+		    int currentQuantity = ledger.get(skuId);
+		    return currentQuantity == StockLedger.ABSENT ? 0 : Math.max(0, currentQuantity - reservedOf(skuId));
+		}
+
+	 /**
+	  * Returns the quantity of a SKU held by reservations.
+	  *
+	  * @param skuId the SKU id
+	  * @return the reserved quantity
+	  */
+	 private int reservedOf(int skuId) {
+		    return Math.max(0, reserved.get(skuId));
+		}
+
+	 /**
+	  * Returns the SKU id of a product in this inventory, assigning one if its name has none yet.
+	  * A product stocked here already carries its id, so only other objects of the same name are looked up.
+	  *
+	  * @param product the product
+	  * @return the SKU id of the product's name
+	  */
+	 private int skuIdOf(SalableProduct product) {
+		    int skuId = product.getSkuId(this);
+		    return skuId >= 0 ? skuId : skus.idOf(product.getName());
+		}
+
+	 /**
+	  * Rejects a quantity that would leave less stock of a SKU than its reservations hold.
+	  * Must be called with the SKU's stripe locked.
+	  *
+	  * @param productName the name of the product, for the message
+	  * @param skuId the SKU id
+	  * @param quantity the quantity about to be set
+	  * @throws IllegalArgumentException if the quantity is below the reserved quantity
+	  */
+	 private void checkReserved(String productName, int skuId, int quantity) {
+		    int held = reservedOf(skuId);
+		    if (quantity < held) {
+		        throw new IllegalArgumentException("Cannot leave " + productName + " with less than the " + held + " reserved for carts");
+		    }
+		}
+
+	 /**
+	  * Gives a reservation's stock back and forgets the reservation. Must be called with the reservation locked.
+	  *
+	  * @param reservation the reservation
+	  */
+	 private void release(Reservation reservation) {
+		    if (reservation.released) {
+		        return;
+		    }
+		    reservation.released = true;
+		    reservations.remove(reservation.cart, reservation);
+		    Map<Integer, Integer> held = new HashMap<>();
+		    reservation.lines.forEach((product, quantity) -> held.put(skuIdOf(product), quantity));
+		    ReentrantLock[] locks = lockStripes(held.keySet());
+		    try {
+		        for (Map.Entry<Integer, Integer> line : held.entrySet()) {
+		            reserved.set(line.getKey(), reservedOf(line.getKey()) - line.getValue());
+		        }
+		    }
+		    finally {
+		        unlockStripes(locks);
+		    }
+		}
+
+	 /**
+	  * Queues a reservation for expiry at its current deadline, unless it is already queued.
+	  *
+	  * @param reservation the reservation
+	  */
+	 private void queueExpiry(Reservation reservation) {
+		    reservationLock.lock();
+		    try {
+		        if (!reservation.queued) {
+		            reservation.queued = true;
+		            reservation.queuedDeadline = reservation.deadline;
+		            reservationExpiries.add(reservation);
+		        }
+		    }
+		    finally {
+		        reservationLock.unlock();
+		    }
+		}
+
+	 /**
+	  * Applies a batch of changes to individual products as a whole: either every operation is applied or,
+	  * if any of them cannot be, none is. The stripes of every product in the patch are held while it is
+	  * checked and applied, so the cost depends only on the size of the patch, not of the catalog.
+	  * SET and ADJUST keep a product whose quantity reaches zero in the inventory. A patch that would leave a
+	  * product with less stock than is reserved for carts is rejected; DELETE removes a product regardless,
+	  * after which its reservations can no longer be sold.
+	  * Product names are only looked up, so a patch naming products that were never stocked registers
+	  * nothing; a new product gets its SKU id once the patch that upserts it has been checked.
+	  *
+	  * @param patch the changes to apply
+	  * @return the number of operations applied
+	  * @throws IllegalArgumentException if an operation refers to a product that is not stocked, would make a quantity
+	  *         negative or would leave less than the reserved quantity
+	  */
+	 public int applyPatch(InventoryPatch patch) {
+		    List<InventoryPatch.Operation> operations = patch.getOperations();
+		    for (InventoryPatch.Operation operation : operations) {
+		        materialize(operation.getName());
+		    }
+
+		    long sequence = 0;
+		    boolean applied = false;
+		    while (!applied) {
+		        // Names from the client are only looked up: a name without an id has never been stocked
+		        Map<String, Integer> ids = new HashMap<>();
+		        List<Integer> registered = new ArrayList<>();
+		        for (InventoryPatch.Operation operation : operations) {
+		            int skuId = skus.find(operation.getName());
+		            ids.put(operation.getName(), skuId);
+		            if (skuId >= 0) {
+		                registered.add(skuId);
+		            }
+		        }
+		        boolean unregistered = registered.size() < operations.size();
+
+		        ReentrantLock[] locks = lockStripes(registered);
+		        try {
+		            // Check: play the patch through on the quantities before changing anything
+		            Map<String, Integer> quantities = new HashMap<>();
+		            for (InventoryPatch.Operation operation : operations) {
+		                int skuId = ids.get(operation.getName());
+		                Integer planned = quantities.get(operation.getName());
+		                int quantity = planned != null ? planned : skuId >= 0 ? ledger.get(skuId) : StockLedger.ABSENT;
+		                if (operation.getType() != InventoryPatch.Type.UPSERT && quantity == StockLedger.ABSENT) {
+		                    throw new IllegalArgumentException(operation.getName() + " is not in the inventory");
+		                }
+		                switch (operation.getType()) {
+		                    case SET:
+		                        quantity = operation.getAmount();
+		                        break;
+		                    case ADJUST:
+		                        long adjusted = (long) quantity + operation.getAmount();
+		                        if (adjusted < 0 || adjusted > Integer.MAX_VALUE) {
+		                            throw new IllegalArgumentException("Cannot adjust the quantity of " + operation.getName() + " by " + operation.getAmount());
+		                        }
+		                        quantity = (int) adjusted;
+		                        break;
+		                    case UPSERT:
+		                        quantity = operation.getProduct().getQuantity();
+		                        break;
+		                    default:
+		                        quantity = StockLedger.ABSENT;
+		                        break;
+		                }
+		                if (quantity != StockLedger.ABSENT && skuId >= 0) {
+		                    checkReserved(operation.getName(), skuId, quantity);
+		                }
+		                quantities.put(operation.getName(), quantity);
+		            }
+
+		            // New products need ids, and their stripes, before the patch can be applied
+		            if (!unregistered) {
+		                // Apply: every operation is known to succeed
+		                for (InventoryPatch.Operation operation : operations) {
+		                    int skuId = ids.get(operation.getName());
+		                    switch (operation.getType()) {
+		                        case SET:
+		                            ledger.set(skuId, operation.getAmount());
+		                            sequence = logQuantity(operation.getName(), operation.getAmount());
+		                            break;
+		                        case ADJUST:
+		                            sequence = logQuantity(operation.getName(), ledger.add(skuId, operation.getAmount()));
+		                            break;
+		                        case UPSERT:
+		                            SalableProduct product = operation.getProduct();
+		                            if (ledger.get(skuId) != StockLedger.ABSENT) {
+		                                unstock(product.getName(), skuId, ledger.get(skuId));
+		                            }
+		                            sequence = stock(product, product.getQuantity());
+		                            break;
+		                        default:
+		                            sequence = unstock(operation.getName(), skuId, ledger.get(skuId));
+		                            break;
+		                    }
+		                }
+		                applied = true;
+		            }
+		        }
+		        finally {
+		            unlockStripes(locks);
+		        }
+		        if (!applied) {
+		            // The patch checked out, so its new products are about to be added; check again under their stripes too
+		            for (InventoryPatch.Operation operation : operations) {
+		                if (operation.getType() == InventoryPatch.Type.UPSERT) {
+		                    skuIdOf(operation.getProduct());
+		                }
+		            }
+		        }
+		    }
+		    awaitDurable(sequence);
+		    return operations.size();
 		}
 	 
 	 /**
@@ -95,23 +1060,185 @@ public class InventoryManager {
 	  * @param amount the amount to increase the quantity by
 	  */
 	 public void increaseQuantity(SalableProduct product, int amount) {
-		    if (inventory.containsKey(product.getName())) {
-		        SalableProduct storedProduct = inventory.get(product.getName());
-		        int currentQuantity = storedProduct.getQuantity();
-		        storedProduct.setQuantity(currentQuantity + amount);
-		    } else {
-		        product.setQuantity(amount);
-		        inventory.put(product.getName(), product);
+		    materialize(product.getName());
+		    int skuId = skuIdOf(product);
+		    long sequence;
+		    ReentrantLock lock = stripeFor(skuId);
+		    lock.lock();
+		    try {
+		        if (ledger.get(skuId) != StockLedger.ABSENT) {
+		            sequence = logQuantity(product.getName(), ledger.add(skuId, amount));
+		        } else {
+		            sequence = stock(product, amount);
+		        }
+		    }
+		    finally {
+		        lock.unlock();
 		    }
+		    awaitDurable(sequence);
 		}
-	 
+
+	 /**
+	  * Sets the quantity of a stocked product, as recorded in the journal.
+	  * Unlike {@link #reduceQuantity(SalableProduct, int)} a quantity of zero keeps the product in the inventory.
+	  *
+	  * @param productName the name of the product
+	  * @param quantity the new quantity
+	  * @return true if the product is stocked and was updated, false if it is not in the inventory
+	  * @throws IllegalArgumentException if the quantity is negative or less than is reserved for carts
+	  */
+	 public boolean setQuantity(String productName, int quantity) {
+		    if (quantity < 0) {
+		        throw new IllegalArgumentException("Quantity cannot be negative");
+		    }
+		    materialize(productName);
+		    int skuId = skus.find(productName);
+		    if (skuId < 0) {
+		        return false;
+		    }
+		    long sequence;
+		    ReentrantLock lock = stripeFor(skuId);
+		    lock.lock();
+		    try {
+		        if (ledger.get(skuId) == StockLedger.ABSENT) {
+		            return false;
+		        }
+		        checkReserved(productName, skuId, quantity);
+		        ledger.set(skuId, quantity);
+		        sequence = logQuantity(productName, quantity);
+		    }
+		    finally {
+		        lock.unlock();
+		    }
+		    awaitDurable(sequence);
+		    return true;
+		}
+
+	 /**
+	  * Sets the quantity of a product object, for {@link SalableProduct#setQuantity(int)}.
+	  *
+	  * @param product the product
+	  * @param quantity the new quantity, not negative
+	  * @return true if the product is the one stocked under its name and was updated, false if it is not
+	  * @throws IllegalArgumentException if the quantity is less than is reserved for carts
+	  */
+	 boolean setQuantity(SalableProduct product, int quantity) {
+		    int skuId = skuIdOf(product);
+		    long sequence;
+		    ReentrantLock lock = stripeFor(skuId);
+		    lock.lock();
+		    try {
+		        if (inventory.get(product.getName()) != product) {
+		            return false;
+		        }
+		        checkReserved(product.getName(), skuId, quantity);
+		        ledger.set(skuId, quantity);
+		        sequence = logQuantity(product.getName(), quantity);
+		    }
+		    finally {
+		        lock.unlock();
+		    }
+		    awaitDurable(sequence);
+		    return true;
+		}
+
+	 /**
+	  * Replaces the definition of a product, its description, price and stats, with the given one,
+	  * stocking the product if it is not in the inventory yet.
+	  * A new quantity below what is reserved for carts is raised to the reserved quantity rather than
+	  * rejected, so that a reload of the inventory file is applied in full; reservations are kept by SKU
+	  * and survive the product being restocked under its new definition.
+	  *
+	  * @param product the new definition of the product
+	  * @param keepQuantity true to keep the quantity currently in stock, false to use the quantity of the given product
+	  * @return true if the inventory changed
+	  */
+	 public boolean replaceProduct(SalableProduct product, boolean keepQuantity) {
+		    materialize(product.getName());
+		    int skuId = skuIdOf(product);
+		    long sequence;
+		    ReentrantLock lock = stripeFor(skuId);
+		    lock.lock();
+		    try {
+		        SalableProduct current = inventory.get(product.getName());
+		        int currentQuantity = ledger.get(skuId);
+		        int quantity = current != null ? Math.max(reservedOf(skuId), product.getQuantity()) : product.getQuantity();
+		        if (current != null && sameDefinition(current, product)) {
+		            if (keepQuantity || currentQuantity == quantity) {
+		                return false;
+		            }
+		            ledger.set(skuId, quantity);
+		            sequence = logQuantity(product.getName(), quantity);
+		        }
+		        else {
+		            if (keepQuantity && current != null) {
+		                quantity = currentQuantity;
+		            }
+		            if (current != null) {
+		                unstock(product.getName(), skuId, currentQuantity);
+		            }
+		            sequence = stock(product, quantity);
+		        }
+		    }
+		    finally {
+		        lock.unlock();
+		    }
+		    awaitDurable(sequence);
+		    return true;
+		}
+
+	 /**
+	  * Returns whether two products have the same type, name, description, price and stats, ignoring their quantities.
+	  *
+	  * @param first the first product
+	  * @param second the second product
+	  * @return true if the products describe the same item
+	  */
+	 static boolean sameDefinition(SalableProduct first, SalableProduct second) {
+		    if (first.getClass() != second.getClass()
+		            || !Objects.equals(first.getName(), second.getName())
+		            || !Objects.equals(first.getDescription(), second.getDescription())
+		            || first.getPrice() != second.getPrice()) {
+		        return false;
+		    }
+		    if (first instanceof Weapon) {
+		        return ((Weapon) first).getDamage() == ((Weapon) second).getDamage();
+		    }
+		    if (first instanceof Armor) {
+		        return ((Armor) first).getDefense() == ((Armor) second).getDefense();
+		    }
+		    if (first instanceof Health) {
+		        return ((Health) first).getHealthAmount() == ((Health) second).getHealthAmount();
+		    }
+		    return true;
+		}
+
 	  /**
 	    * Removes a salable product from the store inventory based on its name.
 	    *
 	    * @param productName the name of the product to remove
 	    */
 	    public void removeProduct(String productName) {
-	        inventory.remove(productName);
+	        LazyCatalog catalog = lazyCatalog;
+	        if (catalog != null) {
+	            // A product still in the mapped catalog is simply never handed out
+	            catalog.take(productName);
+	        }
+	        int skuId = skus.find(productName);
+	        if (skuId < 0) {
+	            return;
+	        }
+	        long sequence;
+	        ReentrantLock lock = stripeFor(skuId);
+	        lock.lock();
+	        try {
+	            int currentQuantity = ledger.get(skuId);
+	            sequence = unstock(productName, skuId, Math.max(currentQuantity, 0));
+	        }
+	        finally {
+	            lock.unlock();
+	        }
+	        awaitDurable(sequence);
 	    }
 
 	    /**
@@ -120,27 +1247,67 @@ public class InventoryManager {
 	     * @param product the product to add to the inventory
 	     */
 	    public void addProduct(SalableProduct product) {
-	        String productName = product.getName();
-	        if (inventory.containsKey(productName)) {
-	            SalableProduct storedProduct = inventory.get(productName);
-	            storedProduct.setQuantity(storedProduct.getQuantity() + product.getQuantity());
-	        } 
-	        else {
-	            inventory.put(productName, product);
+	        addProduct(product, false);
+	    }
+
+	    /**
+	     * Adds a salable product to the store inventory.
+	     *
+	     * @param product the product to add to the inventory
+	     * @param fromCatalog true if the product comes from the mapped catalog, whose contents need not be journaled
+	     */
+	    private void addProduct(SalableProduct product, boolean fromCatalog) {
+	        if (!fromCatalog) {
+	            materialize(product.getName());
+	        }
+	        int skuId = skuIdOf(product);
+	        long sequence;
+	        ReentrantLock lock = stripeFor(skuId);
+	        lock.lock();
+	        try {
+	            if (ledger.get(skuId) != StockLedger.ABSENT) {
+	                sequence = logQuantity(product.getName(), ledger.add(skuId, product.getQuantity()));
+	            }
+	            else if (fromCatalog) {
+	                // The product is already described by the snapshot the catalog maps
+	                stockUnlogged(product, product.getQuantity());
+	                sequence = 0;
+	            }
+	            else {
+	                sequence = stock(product, product.getQuantity());
+	            }
+	        }
+	        finally {
+	            lock.unlock();
 	        }
+	        awaitDurable(sequence);
 	    }
 	    
 	    /**
 	     * Loads the inventory data from the specified inventory file and populates the inventory map.
+	     * Progress is printed to the console every {@value #PROGRESS_INTERVAL} products.
 	     * Throws IO Exception if error in finding file and will terminate program.
 	     * @param inventoryFilePath the path to the inventory file
 	     */
 	    public void loadInventoryFromFile(String fileName) {
-	        try {
-	            File inventoryFile = new File(fileName);
-	            ObjectMapper mapper = new ObjectMapper();
-	            Map<String, SalableProduct> inventoryMap = mapper.readValue(inventoryFile, new TypeReference<Map<String, SalableProduct>>() {});
-	            inventory = new LinkedHashMap<>(inventoryMap);
+	        loadInventoryFromFile(fileName, loaded -> System.out.println("Loaded " + loaded + " products from " + fileName + "..."));
+	    }
+
+	    /**
+	     * Loads the inventory data from the specified inventory file and populates the inventory map.
+	     * The file is read token by token and each product is stocked as soon as it has been parsed, so
+	     * memory use is bounded by the inventory itself rather than by a second, fully parsed copy of the file.
+	     * Throws IO Exception if error in finding file and will terminate program.
+	     * @param fileName the path to the inventory file
+	     * @param progress receives the number of products loaded so far every {@value #PROGRESS_INTERVAL} products, or null
+	     */
+	    public void loadInventoryFromFile(String fileName, LongConsumer progress) {
+	        try (JsonParser parser = MAPPER.getFactory().createParser(new File(fileName))) {
+	            if (parser.nextToken() != JsonToken.START_OBJECT) {
+	                throw new IOException("Expected a JSON object of products in " + fileName);
+	            }
+	            clear();
+	            addProducts(parser, progress);
 	            System.out.println("Inventory loaded successfully from file: " + fileName + "\n");
 	        } 
 	        catch (IOException e) {
@@ -149,4 +1316,120 @@ public class InventoryManager {
 	        }
 	    }
 
+	    /**
+	     * Adds every product in an inventory file to the inventory, like {@link #addProduct(SalableProduct)},
+	     * keeping the products already stocked. The file is streamed like in {@link #loadInventoryFromFile(String, LongConsumer)}
+	     * and may hold either a JSON object of products keyed by name, as inventory.json does, or a JSON array of products.
+	     *
+	     * @param fileName the path to the inventory file
+	     * @return the number of products added
+	     * @throws IOException if the file cannot be read or parsed; products before the error have been added
+	     */
+	    public long addProductsFromFile(String fileName) throws IOException {
+	        try (JsonParser parser = MAPPER.getFactory().createParser(new File(fileName))) {
+	            JsonToken start = parser.nextToken();
+	            if (start != JsonToken.START_OBJECT && start != JsonToken.START_ARRAY) {
+	                throw new IOException("Expected a JSON object or array of products in " + fileName);
+	            }
+	            return addProducts(parser, null);
+	        }
+	    }
+
+	    /**
+	     * Adds the products of a JSON object keyed by name or a JSON array, one product at a time as they are parsed.
+	     *
+	     * @param parser the parser, positioned at the start of the object or array
+	     * @param progress receives the number of products added so far every {@value #PROGRESS_INTERVAL} products, or null
+	     * @return the number of products added
+	     * @throws IOException if the products cannot be parsed
+	     */
+	    private long addProducts(JsonParser parser, LongConsumer progress) throws IOException {
+	        boolean keyed = parser.currentToken() == JsonToken.START_OBJECT;
+	        long added = 0;
+	        while (true) {
+	            JsonToken token = parser.nextToken();
+	            if (keyed ? token != JsonToken.FIELD_NAME : token != JsonToken.START_OBJECT) {
+	                break;
+	            }
+	            if (keyed) {
+	                parser.nextToken();
+	            }
+	            SalableProduct product = readProduct(parser);
+	            if (product.getName() == null) {
+	                System.out.println("Skipping inventory entry without a name: " + (keyed ? parser.getCurrentName() : "#" + added));
+	                continue;
+	            }
+	            addProduct(product);
+	            added++;
+	            if (progress != null && added % PROGRESS_INTERVAL == 0) {
+	                progress.accept(added);
+	            }
+	        }
+	        return added;
+	    }
+
+	    /**
+	     * Reads one product from a parser positioned at the start of the product's JSON object.
+	     *
+	     * @param parser the parser to read from
+	     * @return the parsed product
+	     * @throws IOException if the product cannot be parsed
+	     */
+	    static SalableProduct readProduct(JsonParser parser) throws IOException {
+	        // inventory.json carries no type information, so the product type is inferred from its stats
+	        JsonNode node = parser.readValueAsTree();
+	        Class<? extends SalableProduct> type = SalableProduct.class;
+	        if (node.has("damage")) {
+	            type = Weapon.class;
+	        }
+	        else if (node.has("defense")) {
+	            type = Armor.class;
+	        }
+	        else if (node.has("health") || node.has("healthAmount")) {
+	            type = Health.class;
+	        }
+	        return MAPPER.treeToValue(node, type);
+	    }
+
+	    /**
+	     * Writes the inventory to a binary snapshot file that can be loaded with {@link #fromSnapshot(String)}.
+	     * Snapshots load much faster than inventory.json.
+	     *
+	     * @param fileName the path to the snapshot file
+	     * @throws IOException if the snapshot cannot be written
+	     */
+	    public void saveSnapshot(String fileName) throws IOException {
+	        InventorySnapshot.write(this, fileName);
+	    }
+
+	    /**
+	     * Writes a checkpoint of the inventory and truncates the journal it makes redundant.
+	     * The journal is first rolled over to a new segment, then the snapshot is written from the live
+	     * inventory without taking any stripe locks, so sales carry on while it is written.
+	     * Sales made during the write may or may not be in the snapshot, but they are all logged in the
+	     * new segment, and since journal records hold outcomes rather than deltas, replaying that segment
+	     * over the snapshot restores a consistent inventory. Older segments are deleted once the snapshot is in place.
+	     *
+	     * @param fileName the path to the snapshot file
+	     * @throws IOException if the snapshot cannot be written or old segments cannot be deleted
+	     */
+	    public void checkpoint(String fileName) throws IOException {
+	        InventoryJournal log = journal;
+	        long firstKept = log != null ? log.roll() : 0;
+	        InventorySnapshot.write(this, fileName);
+	        if (log != null) {
+	            log.deleteSegmentsBefore(firstKept);
+	        }
+	    }
+
+	    /**
+	     * Removes every product from the inventory.
+	     */
+	    private void clear() {
+	        lazyCatalog = null;
+	        for (SalableProduct product : inventory.values()) {
+	            removeProduct(product.getName());
+	        }
+	    }
+
 }
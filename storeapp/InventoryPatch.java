@@ -0,0 +1,310 @@
+package storeapp;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The InventoryPatch class is a batch of changes to individual products, applied together with
+ * {@link InventoryManager#applyPatch(InventoryPatch)}. Patches are written as a JSON array of operations:
+ * <pre>
+ * [{"op": "set", "name": "Sword", "quantity": 5},
+ *  {"op": "adjust", "name": "Rope", "delta": -2},
+ *  {"op": "upsert", "product": {"name": "Shield", "price": 80, "quantity": 1, "defense": 30}},
+ *  {"op": "delete", "name": "Torch"}]
+ * </pre>
+ * Patches also have a compact binary form, used by the binary admin protocol: an int operation count
+ * followed by, per operation, the ordinal of its type and then the name and amount, or for an UPSERT
+ * the product as encoded by {@link InventorySnapshot#writeProduct(java.io.DataOutput, SalableProduct)}.
+ * @author rargueta
+ */
+public final class InventoryPatch {
+
+	/**
+	 * The kinds of change a patch can make.
+	 */
+	public enum Type {
+		/** Sets the quantity of a stocked product. */
+		SET,
+		/** Adds to or subtracts from the quantity of a stocked product. */
+		ADJUST,
+		/** Stocks a product, replacing any product with the same name. */
+		UPSERT,
+		/** Removes a stocked product. */
+		DELETE
+	}
+
+	/**
+	 * One change to one product.
+	 */
+	public static final class Operation {
+		private final Type type;
+		private final String name;
+		private final int amount;
+		private final SalableProduct product;
+
+		private Operation(Type type, String name, int amount, SalableProduct product) {
+			this.type = type;
+			this.name = name;
+			this.amount = amount;
+			this.product = product;
+		}
+
+		/**
+		 * Creates an operation that sets the quantity of a stocked product.
+		 *
+		 * @param name the product name
+		 * @param quantity the new quantity
+		 * @return the operation
+		 */
+		public static Operation set(String name, int quantity) {
+			if (quantity < 0) {
+				throw new IllegalArgumentException("Quantity cannot be negative: " + quantity);
+			}
+			return new Operation(Type.SET, Objects.requireNonNull(name), quantity, null);
+		}
+
+		/**
+		 * Creates an operation that adds to or subtracts from the quantity of a stocked product.
+		 *
+		 * @param name the product name
+		 * @param delta the change in quantity
+		 * @return the operation
+		 */
+		public static Operation adjust(String name, int delta) {
+			return new Operation(Type.ADJUST, Objects.requireNonNull(name), delta, null);
+		}
+
+		/**
+		 * Creates an operation that stocks a product, replacing any product with the same name.
+		 *
+		 * @param product the product, with the quantity to stock
+		 * @return the operation
+		 */
+		public static Operation upsert(SalableProduct product) {
+			if (product.getQuantity() < 0) {
+				throw new IllegalArgumentException("Quantity cannot be negative: " + product.getQuantity());
+			}
+			return new Operation(Type.UPSERT, Objects.requireNonNull(product.getName()), 0, product);
+		}
+
+		/**
+		 * Creates an operation that removes a stocked product.
+		 *
+		 * @param name the product name
+		 * @return the operation
+		 */
+		public static Operation delete(String name) {
+			return new Operation(Type.DELETE, Objects.requireNonNull(name), 0, null);
+		}
+
+		/**
+		 * Returns the kind of change.
+		 * @return the operation type
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the name of the product to change.
+		 * @return the product name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the new quantity of a SET or the delta of an ADJUST.
+		 * @return the amount
+		 */
+		public int getAmount() {
+			return amount;
+		}
+
+		/**
+		 * Returns the product stocked by an UPSERT.
+		 * @return the product, or null for other operations
+		 */
+		public SalableProduct getProduct() {
+			return product;
+		}
+	}
+
+	private final List<Operation> operations;
+
+	private InventoryPatch(List<Operation> operations) {
+		this.operations = Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * Creates a patch from a list of operations.
+	 *
+	 * @param operations the operations, in the order they are applied
+	 * @return the patch
+	 */
+	public static InventoryPatch of(List<Operation> operations) {
+		return new InventoryPatch(new ArrayList<>(operations));
+	}
+
+	/**
+	 * Parses a patch from its JSON form.
+	 *
+	 * @param json the JSON array of operations
+	 * @return the parsed patch
+	 * @throws IOException if the JSON is malformed or an operation is invalid
+	 */
+	public static InventoryPatch parse(String json) throws IOException {
+		JsonNode root = InventoryManager.MAPPER.readTree(json);
+		if (root == null || !root.isArray()) {
+			throw new IOException("Expected a JSON array of patch operations");
+		}
+		List<Operation> operations = new ArrayList<>(root.size());
+		for (JsonNode node : root) {
+			Type type;
+			try {
+				type = Type.valueOf(node.path("op").asText().toUpperCase(Locale.ROOT));
+			}
+			catch (IllegalArgumentException e) {
+				throw new IOException("Unknown patch operation: " + node.path("op").asText());
+			}
+			switch (type) {
+				case SET:
+					int quantity = requireInt(node, "quantity");
+					if (quantity < 0) {
+						throw new IOException("Quantity cannot be negative: " + node);
+					}
+					operations.add(new Operation(type, requireName(node), quantity, null));
+					break;
+				case ADJUST:
+					operations.add(new Operation(type, requireName(node), requireInt(node, "delta"), null));
+					break;
+				case UPSERT:
+					if (!node.path("product").isObject()) {
+						throw new IOException("Missing product in patch operation: " + node);
+					}
+					JsonParser parser = node.get("product").traverse(InventoryManager.MAPPER);
+					parser.nextToken();
+					SalableProduct product = InventoryManager.readProduct(parser);
+					if (product.getName() == null) {
+						throw new IOException("Missing product name in patch operation: " + node);
+					}
+					if (product.getQuantity() < 0) {
+						throw new IOException("Quantity cannot be negative: " + node);
+					}
+					operations.add(new Operation(type, product.getName(), 0, product));
+					break;
+				default:
+					operations.add(new Operation(type, requireName(node), 0, null));
+					break;
+			}
+		}
+		return new InventoryPatch(operations);
+	}
+
+	/**
+	 * Reads a patch in its binary form.
+	 *
+	 * @param in the input positioned at the operation count
+	 * @return the patch
+	 * @throws IOException if the patch is malformed or cannot be read
+	 */
+	public static InventoryPatch read(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid operation count: " + count);
+		}
+		Type[] types = Type.values();
+		List<Operation> operations = new ArrayList<>(Math.min(count, 1024));
+		for (int i = 0; i < count; i++) {
+			int ordinal = in.readUnsignedByte();
+			if (ordinal >= types.length) {
+				throw new IOException("Unknown patch operation: " + ordinal);
+			}
+			Type type = types[ordinal];
+			if (type == Type.UPSERT) {
+				SalableProduct product = InventorySnapshot.readProduct(in);
+				if (product == null) {
+					throw new IOException("Unknown product type in patch operation " + i);
+				}
+				if (product.getQuantity() < 0) {
+					throw new IOException("Quantity cannot be negative: " + product.getName());
+				}
+				operations.add(new Operation(type, product.getName(), 0, product));
+				continue;
+			}
+			String name = in.readUTF();
+			int amount = in.readInt();
+			if (type == Type.SET && amount < 0) {
+				throw new IOException("Quantity cannot be negative: " + name);
+			}
+			operations.add(new Operation(type, name, amount, null));
+		}
+		return new InventoryPatch(operations);
+	}
+
+	/**
+	 * Writes the patch in its binary form.
+	 *
+	 * @param out the output to write to
+	 * @throws IOException if the patch cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(operations.size());
+		for (Operation operation : operations) {
+			out.writeByte(operation.getType().ordinal());
+			if (operation.getType() == Type.UPSERT) {
+				InventorySnapshot.writeProduct(out, operation.getProduct());
+			}
+			else {
+				out.writeUTF(operation.getName());
+				out.writeInt(operation.getAmount());
+			}
+		}
+	}
+
+	/**
+	 * Reads the product name of an operation.
+	 *
+	 * @param node the operation
+	 * @return the product name
+	 * @throws IOException if the operation has no name
+	 */
+	private static String requireName(JsonNode node) throws IOException {
+		if (!node.path("name").isTextual()) {
+			throw new IOException("Missing product name in patch operation: " + node);
+		}
+		return node.get("name").asText();
+	}
+
+	/**
+	 * Reads an int field of an operation.
+	 *
+	 * @param node the operation
+	 * @param field the name of the field
+	 * @return the value of the field
+	 * @throws IOException if the field is missing or not an int
+	 */
+	private static int requireInt(JsonNode node, String field) throws IOException {
+		if (!node.path(field).isInt()) {
+			throw new IOException("Missing or invalid " + field + " in patch operation: " + node);
+		}
+		return node.get(field).intValue();
+	}
+
+	/**
+	 * Returns the operations of the patch in the order they are applied.
+	 *
+	 * @return an unmodifiable list of operations
+	 */
+	public List<Operation> getOperations() {
+		return operations;
+	}
+}
@@ -0,0 +1,240 @@
+package storeapp;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * The InventorySnapshot class reads and writes a compact, versioned binary image of an inventory.
+ * Snapshots load much faster than inventory.json because no reflection or text parsing is involved;
+ * inventory.json remains the format for editing and exchanging inventories.
+ *
+ * A snapshot starts with a header (magic number, format version, product count) followed by one
+ * record per product. Each record is an int length followed by that many bytes:
+ * a type tag, the name, an optional description, the price, the quantity and, for weapons, armor
+ * and health items, their damage, defense or health value.
+ * @author rargueta
+ */
+public final class InventorySnapshot {
+
+	/**
+	 * Identifies snapshot files ("FWAS").
+	 */
+	static final int MAGIC = 0x46574153;
+
+	/**
+	 * The snapshot format version written by this class.
+	 */
+	static final int VERSION = 1;
+
+	/** Type tag of a plain {@link SalableProduct}. */
+	static final byte TYPE_PRODUCT = 0;
+	/** Type tag of a {@link Weapon}. */
+	static final byte TYPE_WEAPON = 1;
+	/** Type tag of an {@link Armor}. */
+	static final byte TYPE_ARMOR = 2;
+	/** Type tag of a {@link Health} item. */
+	static final byte TYPE_HEALTH = 3;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private InventorySnapshot() {
+
+	}
+
+	/**
+	 * Writes every product in the inventory to a snapshot file.
+	 * The snapshot is written to a temporary file first and then moved into place, so a crash
+	 * while writing never leaves a truncated snapshot behind.
+	 *
+	 * @param inventoryManager the inventory to write
+	 * @param fileName the path of the snapshot file
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public static void write(InventoryManager inventoryManager, String fileName) throws IOException {
+		Path target = Paths.get(fileName).toAbsolutePath();
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		Collection<SalableProduct> products = inventoryManager.getInventory().values();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(products.size());
+
+			ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+			DataOutputStream recordOut = new DataOutputStream(record);
+			int written = 0;
+			for (SalableProduct product : products) {
+				record.reset();
+				writeProduct(recordOut, product);
+				out.writeInt(record.size());
+				record.writeTo(out);
+				written++;
+			}
+			if (written != products.size()) {
+				// The inventory changed while it was being written; the header count is only a hint
+				System.out.println("Inventory changed while writing snapshot: " + written + " products written.");
+			}
+		}
+		// The snapshot must be on disk before journal segments it replaces may be deleted
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot file and stocks every product in it into the given inventory.
+	 *
+	 * @param fileName the path of the snapshot file
+	 * @param inventoryManager the inventory to stock
+	 * @return the number of products read
+	 * @throws IOException if the file is not a valid snapshot or cannot be read
+	 */
+	public static int read(String fileName, InventoryManager inventoryManager) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), BUFFER_SIZE))) {
+			readHeader(in, fileName);
+			int count = 0;
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				}
+				catch (EOFException e) {
+					break;
+				}
+				byte type = in.readByte();
+				if (type < TYPE_PRODUCT || type > TYPE_HEALTH) {
+					// Written by a newer version; the length prefix lets us skip it
+					if (length < 1 || in.skipBytes(length - 1) != length - 1) {
+						throw new EOFException("Truncated record of type " + type + " in " + fileName);
+					}
+					continue;
+				}
+				inventoryManager.addProduct(readProduct(type, in));
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Reads and validates a snapshot header.
+	 *
+	 * @param in the input positioned at the start of the snapshot
+	 * @param fileName the name of the snapshot, for error messages
+	 * @return the product count recorded in the header
+	 * @throws IOException if the header is not a supported snapshot header
+	 */
+	static int readHeader(DataInput in, String fileName) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException(fileName + " is not an inventory snapshot");
+		}
+		int version = in.readInt();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported inventory snapshot version " + version + " in " + fileName);
+		}
+		return in.readInt();
+	}
+
+	/**
+	 * Writes the body of one product record.
+	 *
+	 * @param out the output to write to
+	 * @param product the product to write
+	 * @throws IOException if the product cannot be written
+	 */
+	public static void writeProduct(DataOutput out, SalableProduct product) throws IOException {
+		byte type = typeOf(product);
+		out.writeByte(type);
+		out.writeUTF(product.getName());
+		out.writeBoolean(product.getDescription() != null);
+		if (product.getDescription() != null) {
+			out.writeUTF(product.getDescription());
+		}
+		out.writeInt(product.getPrice());
+		out.writeInt(product.getQuantity());
+		switch (type) {
+			case TYPE_WEAPON:
+				out.writeInt(((Weapon) product).getDamage());
+				break;
+			case TYPE_ARMOR:
+				out.writeInt(((Armor) product).getDefense());
+				break;
+			case TYPE_HEALTH:
+				out.writeInt(((Health) product).getHealthAmount());
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Reads the body of one product record.
+	 *
+	 * @param in the input positioned at the type tag of the record
+	 * @return the product, or null if the record has a type this version does not know
+	 * @throws IOException if the record cannot be read
+	 */
+	public static SalableProduct readProduct(DataInput in) throws IOException {
+		return readProduct(in.readByte(), in);
+	}
+
+	/**
+	 * Reads the body of one product record after its type tag.
+	 *
+	 * @param type the type tag of the record
+	 * @param in the input positioned just after the type tag
+	 * @return the product, or null if the record has a type this version does not know
+	 * @throws IOException if the record cannot be read
+	 */
+	static SalableProduct readProduct(byte type, DataInput in) throws IOException {
+		String name = in.readUTF();
+		String description = in.readBoolean() ? in.readUTF() : null;
+		int price = in.readInt();
+		int quantity = in.readInt();
+		switch (type) {
+			case TYPE_PRODUCT:
+				return new SalableProduct(name, description, price, quantity);
+			case TYPE_WEAPON:
+				return new Weapon(name, description, price, quantity, in.readInt());
+			case TYPE_ARMOR:
+				return new Armor(name, description, price, quantity, in.readInt());
+			case TYPE_HEALTH:
+				return new Health(name, description, price, quantity, in.readInt());
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the type tag of a product.
+	 *
+	 * @param product the product
+	 * @return the type tag written for the product
+	 */
+	static byte typeOf(SalableProduct product) {
+		if (product instanceof Weapon) {
+			return TYPE_WEAPON;
+		}
+		if (product instanceof Armor) {
+			return TYPE_ARMOR;
+		}
+		if (product instanceof Health) {
+			return TYPE_HEALTH;
+		}
+		return TYPE_PRODUCT;
+	}
+}
@@ -0,0 +1,194 @@
+package storeapp;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The LazyCatalog class memory-maps an inventory snapshot (see {@link InventorySnapshot}) and keeps
+ * only an index from product name to record position on the heap. Products are decoded from the
+ * mapped bytes the first time they are needed, so opening even a very large catalog is fast and the
+ * heap only grows with the products that are actually used.
+ * Files larger than a single mapping are split into several mapped regions, each starting on a record boundary.
+ * @author rargueta
+ */
+class LazyCatalog {
+
+	/**
+	 * The largest region mapped at once.
+	 */
+	private static final long MAX_REGION_SIZE = 1L << 30;
+
+	/**
+	 * The mapped regions of the snapshot file.
+	 */
+	private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+	/**
+	 * The position of every product that has not been materialized yet, keyed by exact name, as the
+	 * inventory is: names that differ only in case are different products.
+	 * Positions are encoded as the region index in the high 32 bits and the offset in the low 32 bits.
+	 */
+	private final ConcurrentHashMap<String, Long> positions = new ConcurrentHashMap<>();
+
+	/**
+	 * The exact name of a remaining product for each normalized name, for lookups that ignore case.
+	 * When names differ only in case, the first one in the snapshot is kept, as the inventory's own
+	 * name index would.
+	 */
+	private final ConcurrentHashMap<String, String> namesByNormalizedName = new ConcurrentHashMap<>();
+
+	/**
+	 * Maps the given snapshot file and indexes the names of its products.
+	 *
+	 * @param fileName the path of the snapshot file
+	 * @throws IOException if the file is not a valid snapshot or cannot be mapped
+	 */
+	LazyCatalog(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 12) {
+				throw new IOException(fileName + " is not an inventory snapshot");
+			}
+			long regionStart = 0;
+			while (regionStart < size) {
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(MAX_REGION_SIZE, size - regionStart));
+				int regionIndex = regions.size();
+				regions.add(region);
+				if (regionIndex == 0) {
+					byte[] header = new byte[12];
+					region.get(header);
+					InventorySnapshot.readHeader(new DataInputStream(new ByteArrayInputStream(header)), fileName);
+				}
+				regionStart += indexRegion(region, regionIndex, fileName);
+			}
+		}
+	}
+
+	/**
+	 * Indexes every complete record in a mapped region.
+	 *
+	 * @param region the mapped region, positioned at its first record
+	 * @param regionIndex the index of the region
+	 * @param fileName the name of the snapshot, for error messages
+	 * @return the number of bytes of the region that were indexed
+	 * @throws IOException if the snapshot is corrupt
+	 */
+	private int indexRegion(MappedByteBuffer region, int regionIndex, String fileName) throws IOException {
+		int firstRecord = region.position();
+		while (region.remaining() >= 4) {
+			int recordStart = region.position();
+			int length = region.getInt(recordStart);
+			if (length <= 0) {
+				throw new IOException("Corrupt record at offset " + recordStart + " in " + fileName);
+			}
+			if (region.remaining() < 4 + length) {
+				if (recordStart == firstRecord) {
+					throw new IOException("Truncated or oversized record at offset " + recordStart + " in " + fileName);
+				}
+				// The record continues past this region; the next region starts with it
+				break;
+			}
+			byte type = region.get(recordStart + 4);
+			if (type >= InventorySnapshot.TYPE_PRODUCT && type <= InventorySnapshot.TYPE_HEALTH) {
+				String name = readName(region, recordStart + 5);
+				positions.put(name, ((long) regionIndex << 32) | recordStart);
+				namesByNormalizedName.putIfAbsent(InventoryManager.normalizeName(name), name);
+			}
+			region.position(recordStart + 4 + length);
+		}
+		return region.position();
+	}
+
+	/**
+	 * Decodes the modified UTF-8 name stored at the given offset.
+	 *
+	 * @param region the region holding the name
+	 * @param offset the offset of the name's length prefix
+	 * @return the decoded name
+	 * @throws IOException if the name cannot be decoded
+	 */
+	private static String readName(ByteBuffer region, int offset) throws IOException {
+		int length = region.getShort(offset) & 0xFFFF;
+		byte[] encoded = new byte[length + 2];
+		region.get(offset, encoded);
+		return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(encoded)));
+	}
+
+	/**
+	 * Removes the product with the given name from the catalog and decodes it.
+	 * Each product is handed out at most once; afterwards the caller owns it.
+	 *
+	 * @param productName the exact name of the product
+	 * @return the decoded product, or null if the catalog does not hold it (any more)
+	 */
+	SalableProduct take(String productName) {
+		Long position = positions.remove(productName);
+		if (position == null) {
+			return null;
+		}
+		namesByNormalizedName.remove(InventoryManager.normalizeName(productName), productName);
+		ByteBuffer region = regions.get((int) (position >>> 32));
+		int offset = (int) (long) position;
+		byte[] record = new byte[region.getInt(offset)];
+		region.get(offset + 4, record);
+		try {
+			return InventorySnapshot.readProduct(new DataInputStream(new ByteArrayInputStream(record)));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Corrupt inventory snapshot record for " + productName, e);
+		}
+	}
+
+	/**
+	 * Removes the product with the given name, in any case, from the catalog and decodes it.
+	 * A product with exactly that name is preferred over one whose name only differs in case.
+	 *
+	 * @param productName the name of the product, in any case
+	 * @return the decoded product, or null if the catalog does not hold one with that name (any more)
+	 */
+	SalableProduct takeIgnoringCase(String productName) {
+		SalableProduct product = take(productName);
+		if (product == null) {
+			String name = namesByNormalizedName.get(InventoryManager.normalizeName(productName));
+			if (name != null) {
+				product = take(name);
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Returns the names of the products that have not been materialized yet.
+	 *
+	 * @return a weakly consistent view of the remaining names
+	 */
+	Iterable<String> remainingNames() {
+		return positions.keySet();
+	}
+
+	/**
+	 * Returns whether every product has been materialized.
+	 *
+	 * @return true if the catalog has nothing left to hand out
+	 */
+	boolean isEmpty() {
+		return positions.isEmpty();
+	}
+
+	/**
+	 * Returns the number of products that have not been materialized yet.
+	 *
+	 * @return the number of remaining products
+	 */
+	int remaining() {
+		return positions.size();
+	}
+}
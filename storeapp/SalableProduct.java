@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 /**
 *A class representing a salable product.
+*Once a product is stocked by an {@link InventoryManager}, its quantity is kept in the inventory's
+*{@link StockLedger} rather than in the product itself, so sales never modify the product object.
 *@author rargueta
 */
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -13,6 +15,21 @@ public class SalableProduct {
 	private String description;
 	private int price;
 	private int quantity;
+
+	/**
+	 * The ledger holding this product's stock while it is part of an inventory, or null.
+	 */
+	private volatile StockLedger ledger;
+
+	/**
+	 * The inventory that stocks this product, or null.
+	 */
+	private volatile InventoryManager owner;
+
+	/**
+	 * The SKU id of this product in the inventory that stocks it, written before the product is attached.
+	 */
+	private int skuId = -1;
 	
 	/**
 	 * Default constructor 
@@ -72,19 +89,67 @@ public class SalableProduct {
 	 */
 	
 	public int getQuantity() {
+		StockLedger stock = ledger;
+		if (stock != null) {
+			int stocked = stock.get(skuId);
+			if (stocked != StockLedger.ABSENT) {
+				return stocked;
+			}
+		}
 		return quantity;
 	}
 
+	/**
+	 * Returns the SKU id this product was stocked with, if it is stocked by the given inventory.
+	 *
+	 * @param inventory the inventory asking
+	 * @return the SKU id in that inventory's {@link SkuRegistry}, or -1 if the product is not stocked by it
+	 */
+	int getSkuId(InventoryManager inventory) {
+		return owner == inventory ? skuId : -1;
+	}
+
+	/**
+	 * Binds this product to the inventory that stocks it and its ledger.
+	 *
+	 * @param inventory the inventory that now stocks this product
+	 * @param stock the ledger that now holds this product's quantity
+	 * @param skuId the SKU id of this product in the inventory's {@link SkuRegistry}
+	 */
+	void attach(InventoryManager inventory, StockLedger stock, int skuId) {
+		this.skuId = skuId;
+		this.ledger = stock;
+		this.owner = inventory;
+	}
+
+	/**
+	 * Unbinds this product from its inventory's ledger, keeping the given quantity locally.
+	 *
+	 * @param remaining the quantity the product keeps after leaving the inventory
+	 */
+	void detach(int remaining) {
+		this.quantity = remaining;
+		this.ledger = null;
+		this.owner = null;
+	}
+
 	/**
 	 * Updates the quantity of the product.
+	 * While the product is stocked, the change goes through its inventory like
+	 * {@link InventoryManager#setQuantity(String, int)}, so it is locked, journaled and versioned.
 	 * 
 	 * @param quantity the new quantity of the product
+	 * @throws IllegalArgumentException if the quantity is negative, or less than its inventory holds for carts
 	 */
 
 	public void setQuantity(int quantity) {
 		if (quantity < 0) {
 	        throw new IllegalArgumentException("Quantity cannot be negative");
 	    }
+		InventoryManager inventory = owner;
+		if (inventory != null && inventory.setQuantity(this, quantity)) {
+			return;
+		}
 		this.quantity = quantity;
 	}
 }
\ No newline at end of file
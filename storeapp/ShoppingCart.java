@@ -1,77 +1,422 @@
 package storeapp;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * This class represents a shopping cart that stores a list of salable products
  * chosen for purchase by the user.
+ * The cart is a small open-addressing hash table keyed by product name, with the quantities held as plain
+ * ints, so two instances of the same product share one line and adding, removing, finding and iterating
+ * with {@link #forEach(LineConsumer)} allocate nothing. Lines are placed by a hash of the name that ignores
+ * case, so {@link #findProduct(String)} probes the same run as an exact lookup. An empty cart holds no table at all.
  * @author rargueta
  */
 public class ShoppingCart {
 
     /**
-     * The map of products in the shopping cart.
+     * Receives the lines of a cart, see {@link ShoppingCart#forEach(LineConsumer)}.
      */
 
-    private HashMap<SalableProduct, Integer> mapOfProducts;
+    @FunctionalInterface
+    public interface LineConsumer {
+
+        /**
+         * Receives one line of the cart.
+         *
+         * @param product the product of the line
+         * @param quantity the quantity of the product in the cart
+         */
+
+        void accept(SalableProduct product, int quantity);
+    }
+
+    /**
+     * The number of slots of the table created by the first product added. Must be a power of two.
+     */
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The case-insensitive name hashes of the lines, by slot.
+     */
+
+    private int[] hashes;
+
+    /**
+     * The quantities of the lines, by slot.
+     */
+
+    private int[] quantities;
+
+    /**
+     * The products of the lines, by slot; a null product marks a free slot.
+     */
+
+    private SalableProduct[] products;
+
+
+    /**
+     * The number of lines in the cart.
+     */
+
+    private int size;
+
+    /**
+     * The live map view returned by {@link #getProducts()}, created on first use.
+     */
+
+    private Map<SalableProduct, Integer> view;
 
     /**
      * Constructs a new ShoppingCart object with an empty list of products.
      */
 
     public ShoppingCart() {
-        mapOfProducts = new HashMap<>();
+
     }
 
     /**
      * Adds the specified salable product with the given quantity to the shopping cart.
+     * A product already in the cart, under any instance with the same name, gets its quantity increased.
      *
      * @param product the salable product to add
      * @param quantity the quantity of the salable product to add
      */
 
     public void addProduct(SalableProduct product, int quantity) {
-        if (mapOfProducts.containsKey(product)) {
-            int currentQuantity = mapOfProducts.get(product);
-            mapOfProducts.put(product, currentQuantity + quantity);
-        } 
-        else {
-            mapOfProducts.put(product, quantity);
+        int hash = nameHash(product.getName());
+        int slot = slotOf(product.getName(), hash);
+        if (slot >= 0) {
+            quantities[slot] += quantity;
+            return;
+        }
+        if (products == null) {
+            hashes = new int[INITIAL_CAPACITY];
+            quantities = new int[INITIAL_CAPACITY];
+            products = new SalableProduct[INITIAL_CAPACITY];
         }
+        else if ((size + 1) * 4 > products.length * 3) {
+            resize(products.length * 2);
+        }
+        insert(hash, quantity, product);
+        size++;
     }
 
     /**
      * Removes the specified salable product with the given quantity from the shopping cart.
+     * The line is removed when its quantity is used up.
      *
      * @param product the salable product to remove
      * @param quantity the quantity of the salable product to remove
      */
 
     public void removeProduct(SalableProduct product, int quantity) {
-        if (mapOfProducts.containsKey(product)) {
-            int currentQuantity = mapOfProducts.get(product);
-            if (currentQuantity <= quantity) {
-                mapOfProducts.remove(product);
-            } 
+        int slot = slotOf(product.getName());
+        if (slot >= 0) {
+            if (quantities[slot] <= quantity) {
+                removeSlot(slot);
+            }
             else {
-                mapOfProducts.put(product, currentQuantity - quantity);
+                quantities[slot] -= quantity;
+            }
+        }
+    }
+
+    /**
+     * Returns the quantity of a product in the shopping cart.
+     *
+     * @param product the product, or any instance with the same name
+     * @return the quantity in the cart, or 0 if the product is not in the cart
+     */
+
+    public int getQuantity(SalableProduct product) {
+        int slot = slotOf(product.getName());
+        return slot >= 0 ? quantities[slot] : 0;
+    }
+
+    /**
+     * Finds a product in the shopping cart by name, ignoring case.
+     * If the cart holds products whose names differ only in case, one with exactly the given name is
+     * preferred, and otherwise any of them is returned.
+     *
+     * @param productName the name of the product, in any case
+     * @return the product in the cart, or null if no product with that name is in the cart
+     */
+
+    public SalableProduct findProduct(String productName) {
+        int exact = slotOf(productName);
+        if (exact >= 0) {
+            return products[exact];
+        }
+        if (size == 0) {
+            return null;
+        }
+        int hash = nameHash(productName);
+        int mask = products.length - 1;
+        for (int slot = homeSlot(hash); products[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && products[slot].getName().equalsIgnoreCase(productName)) {
+                return products[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passes every line of the shopping cart to the consumer, without allocating.
+     * The cart must not be changed by the consumer.
+     *
+     * @param consumer receives the product and quantity of each line
+     */
+
+    public void forEach(LineConsumer consumer) {
+        if (products != null) {
+            for (int slot = 0; slot < products.length; slot++) {
+                if (products[slot] != null) {
+                    consumer.accept(products[slot], quantities[slot]);
+                }
             }
         }
     }
-   
+
+    /**
+     * Returns the number of lines, that is distinct products, in the shopping cart.
+     *
+     * @return the number of lines
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the shopping cart is empty.
+     *
+     * @return true if the cart has no lines
+     */
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
     /**
-     * Returns the map of salable products and their quantities in the shopping cart.
+     * Returns a live, read-only map view of the salable products and their quantities in the shopping cart.
+     * Products are matched by name, so any instance with the same name finds the line.
+     * Iterating the view allocates an entry per line; {@link #forEach(LineConsumer)} does not.
      *
      * @return the map of salable products and their quantities in the shopping cart
      */
 
-    public HashMap<SalableProduct, Integer> getProducts() {
-        return mapOfProducts;
+    public Map<SalableProduct, Integer> getProducts() {
+        if (view == null) {
+            view = new ProductsView();
+        }
+        return view;
     }
-    
+
     /**
-     * Removes all products from the shopping cart.
+     * Removes all products from the shopping cart. The table is kept for the next products added.
      */
+
     public void clear() {
-    mapOfProducts.clear();
+        if (products != null) {
+            Arrays.fill(products, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Hashes a product name ignoring case, folding each code point the way
+     * {@link String#equalsIgnoreCase(String)} compares them, so names equal ignoring case hash alike.
+     *
+     * @param name the product name
+     * @return the hash
+     */
+
+    private static int nameHash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); ) {
+            int codePoint = name.codePointAt(i);
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(codePoint));
+            i += Character.charCount(codePoint);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the slot a name hash maps to.
+     *
+     * @param hash the name hash
+     * @return the first slot to probe
+     */
+
+    private int homeSlot(int hash) {
+        // Spread the hash before masking, as short names differ mostly in their low bits
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (products.length - 1);
+    }
+
+    /**
+     * Finds the slot holding the line of a product name.
+     *
+     * @param name the exact product name
+     * @return the slot, or -1 if no product with that name is in the cart
+     */
+
+    private int slotOf(String name) {
+        return size == 0 ? -1 : slotOf(name, nameHash(name));
+    }
+
+    /**
+     * Finds the slot holding the line of a product name, given its hash.
+     *
+     * @param name the exact product name
+     * @param hash the hash of the name
+     * @return the slot, or -1 if no product with that name is in the cart
+     */
+
+    private int slotOf(String name, int hash) {
+        if (size == 0) {
+            return -1;
+        }
+        int mask = products.length - 1;
+        for (int slot = homeSlot(hash); products[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && products[slot].getName().equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a line in the first free slot from its home slot. The table must have a free slot.
+     *
+     * @param hash the name hash of the line
+     * @param quantity the quantity of the line
+     * @param product the product of the line
+     */
+
+    private void insert(int hash, int quantity, SalableProduct product) {
+        int mask = products.length - 1;
+        int slot = homeSlot(hash);
+        while (products[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        quantities[slot] = quantity;
+        products[slot] = product;
+    }
+
+    /**
+     * Moves every line to a table of a new size.
+     *
+     * @param capacity the new number of slots, a power of two
+     */
+
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        int[] oldQuantities = quantities;
+        SalableProduct[] oldProducts = products;
+        hashes = new int[capacity];
+        quantities = new int[capacity];
+        products = new SalableProduct[capacity];
+        for (int slot = 0; slot < oldProducts.length; slot++) {
+            if (oldProducts[slot] != null) {
+                insert(oldHashes[slot], oldQuantities[slot], oldProducts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes the line in a slot, shifting later lines of the same probe run back into the gap so
+     * that lookups never need tombstones.
+     *
+     * @param slot the slot to empty
+     */
+
+    private void removeSlot(int slot) {
+        int mask = products.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; products[next] != null; next = (next + 1) & mask) {
+            // A line may fill the hole only if the hole lies between its home slot and where it is now
+            if (((next - homeSlot(hashes[next])) & mask) >= ((next - hole) & mask)) {
+                hashes[hole] = hashes[next];
+                quantities[hole] = quantities[next];
+                products[hole] = products[next];
+                hole = next;
+            }
+        }
+        products[hole] = null;
+        size--;
+    }
+
+    /**
+     * The map view of the cart returned by {@link ShoppingCart#getProducts()}.
+     */
+
+    private final class ProductsView extends AbstractMap<SalableProduct, Integer> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof SalableProduct && slotOf(((SalableProduct) key).getName()) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof SalableProduct)) {
+                return null;
+            }
+            int slot = slotOf(((SalableProduct) key).getName());
+            return slot >= 0 ? quantities[slot] : null;
+        }
+
+        @Override
+        public Set<Map.Entry<SalableProduct, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<SalableProduct, Integer>>() {
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<SalableProduct, Integer>> iterator() {
+                    return new Iterator<Map.Entry<SalableProduct, Integer>>() {
+                        private int slot = advance(0);
+
+                        private int advance(int from) {
+                            while (products != null && from < products.length && products[from] == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return products != null && slot < products.length;
+                        }
+
+                        @Override
+                        public Map.Entry<SalableProduct, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<SalableProduct, Integer> entry = new AbstractMap.SimpleImmutableEntry<>(products[slot], quantities[slot]);
+                            slot = advance(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package storeapp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SkuRegistry class assigns every product name of one inventory a dense integer SKU id.
+ * Each {@link InventoryManager} owns its own registry, so ids start at zero for every inventory and can be
+ * used directly as indexes into its primitive arrays such as the {@link StockLedger}.
+ * Ids are never reused: reservations and sales in progress address stock by id, so the id of a removed
+ * product stays assigned in case the product is stocked again. A registry therefore grows with the number
+ * of distinct names its inventory has ever stocked, and is freed together with the inventory.
+ * @author rargueta
+ */
+public final class SkuRegistry {
+
+	/**
+	 * The ids assigned so far, keyed by product name.
+	 */
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+	/**
+	 * The next id to hand out.
+	 */
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Returns the SKU id of the product with the given name, assigning a new one if needed.
+	 *
+	 * @param productName the name of the product
+	 * @return the dense SKU id of the product
+	 */
+	public int idOf(String productName) {
+		Integer id = ids.get(productName);
+		if (id != null) {
+			return id;
+		}
+		return ids.computeIfAbsent(productName, name -> nextId.getAndIncrement());
+	}
+
+	/**
+	 * Returns the SKU id of the product with the given name without assigning one.
+	 *
+	 * @param productName the name of the product
+	 * @return the SKU id, or -1 if the name has never been registered
+	 */
+	public int find(String productName) {
+		Integer id = ids.get(productName);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Returns the number of SKU ids handed out so far.
+	 *
+	 * @return the number of registered product names
+	 */
+	public int size() {
+		return nextId.get();
+	}
+}
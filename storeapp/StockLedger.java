@@ -0,0 +1,112 @@
+package storeapp;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The StockLedger class holds the stock level of every product in an inventory as a primitive int,
+ * indexed by the product's dense SKU id (see {@link SkuRegistry}).
+ * Storage is split into fixed-size segments that are allocated as the id space grows, so reads and
+ * updates are plain array operations that never allocate. A value of {@link #ABSENT} marks a SKU
+ * that is not stocked by this inventory.
+ * Updates are expected to be serialized per SKU by the caller; reads may happen from any thread.
+ * @author rargueta
+ */
+public class StockLedger {
+
+	/**
+	 * The value stored for SKUs that are not part of the inventory.
+	 */
+	public static final int ABSENT = -1;
+
+	private static final int SEGMENT_SHIFT = 12;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/**
+	 * The allocated segments; replaced by a larger copy when the ledger grows.
+	 */
+	private volatile AtomicIntegerArray[] segments = new AtomicIntegerArray[0];
+
+	/**
+	 * Returns the stock level of the given SKU.
+	 *
+	 * @param skuId the SKU id
+	 * @return the quantity in stock, or {@link #ABSENT} if the SKU is not stocked
+	 */
+	public int get(int skuId) {
+		AtomicIntegerArray[] current = segments;
+		int segment = skuId >>> SEGMENT_SHIFT;
+		if (segment >= current.length) {
+			return ABSENT;
+		}
+		return current[segment].get(skuId & SEGMENT_MASK);
+	}
+
+	/**
+	 * Sets the stock level of the given SKU.
+	 *
+	 * @param skuId the SKU id
+	 * @param quantity the new quantity, or {@link #ABSENT} to mark the SKU as not stocked
+	 */
+	public void set(int skuId, int quantity) {
+		segmentFor(skuId).set(skuId & SEGMENT_MASK, quantity);
+	}
+
+	/**
+	 * Adds the given amount to the stock level of the given SKU.
+	 *
+	 * @param skuId the SKU id
+	 * @param delta the amount to add; may be negative
+	 * @return the updated quantity
+	 */
+	public int add(int skuId, int delta) {
+		return segmentFor(skuId).addAndGet(skuId & SEGMENT_MASK, delta);
+	}
+
+	/**
+	 * Marks every SKU as not stocked. Allocated segments are kept for reuse.
+	 */
+	public synchronized void clear() {
+		for (AtomicIntegerArray segment : segments) {
+			for (int i = 0; i < SEGMENT_SIZE; i++) {
+				segment.set(i, ABSENT);
+			}
+		}
+	}
+
+	/**
+	 * Returns the segment holding the given SKU, allocating segments up to it if needed.
+	 *
+	 * @param skuId the SKU id
+	 * @return the segment holding the SKU
+	 */
+	private AtomicIntegerArray segmentFor(int skuId) {
+		AtomicIntegerArray[] current = segments;
+		int segment = skuId >>> SEGMENT_SHIFT;
+		if (segment < current.length) {
+			return current[segment];
+		}
+		return grow(segment);
+	}
+
+	/**
+	 * Grows the segment table so that it contains the given segment.
+	 *
+	 * @param segment the index of the segment that must exist
+	 * @return the requested segment
+	 */
+	private synchronized AtomicIntegerArray grow(int segment) {
+		AtomicIntegerArray[] current = segments;
+		if (segment >= current.length) {
+			AtomicIntegerArray[] larger = Arrays.copyOf(current, Math.max(segment + 1, current.length * 2));
+			for (int i = current.length; i < larger.length; i++) {
+				int[] values = new int[SEGMENT_SIZE];
+				Arrays.fill(values, ABSENT);
+				larger[i] = new AtomicIntegerArray(values);
+			}
+			segments = larger;
+			current = larger;
+		}
+		return current[segment];
+	}
+}
@@ -14,6 +14,9 @@ import java.net.InetAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The StoreFront class represents a store with an inventory of salable products
@@ -21,22 +24,249 @@ import java.nio.file.Paths;
  * @author rargueta
  */
 public class StoreFront {
+	/**
+	 * The inventory file edited by admins and used when no newer snapshot exists.
+	 */
+	public static final String INVENTORY_FILE = "inventory.json";
+
+	/**
+	 * The binary inventory snapshot written on shutdown and on demand.
+	 */
+	public static final String SNAPSHOT_FILE = "inventory.snapshot";
+
+	/**
+	 * When this system property is "true", the snapshot is memory-mapped and products are loaded on first use.
+	 */
+	public static final String LAZY_CATALOG_PROPERTY = "storefront.lazyCatalog";
+
+	/**
+	 * The base name of the write-ahead log segments holding the inventory changes made since the last snapshot.
+	 */
+	public static final String JOURNAL_FILE = "inventory.journal";
+
+	/**
+	 * The system property holding the number of seconds between background checkpoints (default 300, 0 disables them).
+	 */
+	public static final String CHECKPOINT_INTERVAL_PROPERTY = "storefront.checkpointSeconds";
+
+	/**
+	 * When this system property is "true", edits to inventory.json are applied to the running store.
+	 */
+	public static final String WATCH_INVENTORY_PROPERTY = "storefront.watchInventory";
+
+	/**
+	 * The system property holding the most shopper sessions held at once (default 100000).
+	 */
+	public static final String MAX_SESSIONS_PROPERTY = "storefront.maxSessions";
+
+	/**
+	 * The system property holding the number of seconds a shopper session may be idle before it ends (default 1800).
+	 */
+	public static final String SESSION_TIMEOUT_PROPERTY = "storefront.sessionTimeoutSeconds";
+
+	/**
+	 * The system property holding the number of seconds stock added to a cart stays reserved for it (default 900).
+	 */
+	public static final String RESERVATION_TTL_PROPERTY = "storefront.reservationTtlSeconds";
+
 	private InventoryManager inventoryManager;
 	private ShoppingCart cart;
 	private AdministrationService administrationService;
+	private ScheduledExecutorService checkpointer;
+	private ScheduledExecutorService reservationSweeper;
+	private long reservationTtlMillis;
+	private InventoryFileWatcher inventoryWatcher;
+	private CartService cartService;
 
 
 	/**
 	 * Constructs a new StoreFront object with an inventory loaded from a JSON file.
 	 */
 	public StoreFront() {
-		this.inventoryManager = new InventoryManager("inventory.json");
+		this(new InventoryManager(INVENTORY_FILE));
+	}
+
+	/**
+	 * Constructs a new StoreFront object around an already loaded inventory.
+	 * @param inventoryManager the inventory manager for this store
+	 */
+	public StoreFront(InventoryManager inventoryManager) {
+		this.inventoryManager = inventoryManager;
 		this.cart = new ShoppingCart();
+		this.cartService = new CartService(Integer.getInteger(MAX_SESSIONS_PROPERTY, 100_000),
+				TimeUnit.SECONDS.toMillis(Long.getLong(SESSION_TIMEOUT_PROPERTY, 1800)),
+				(sessionId, sessionCart) -> inventoryManager.releaseReservations(sessionCart));
+		this.reservationTtlMillis = TimeUnit.SECONDS.toMillis(Long.getLong(RESERVATION_TTL_PROPERTY, 900));
 		
 		// Create the AdministrationService instance and pass the StoreFront reference
 	   administrationService = new AdministrationService(this);
 	}
 
+	/**
+	 * Loads the store's inventory for startup. The binary snapshot is used when it is at least as
+	 * recent as inventory.json, since it loads much faster; otherwise inventory.json is parsed.
+	 * With the {@value #LAZY_CATALOG_PROPERTY} system property set, the snapshot is mapped instead of read.
+	 * @return the loaded inventory manager
+	 */
+	private static InventoryManager loadInventory() {
+		File snapshot = new File(SNAPSHOT_FILE);
+		if (snapshot.isFile() && snapshot.lastModified() >= new File(INVENTORY_FILE).lastModified()) {
+			try {
+				if (Boolean.getBoolean(LAZY_CATALOG_PROPERTY)) {
+					return InventoryManager.mapSnapshot(SNAPSHOT_FILE);
+				}
+				return InventoryManager.fromSnapshot(SNAPSHOT_FILE);
+			}
+			catch (IOException e) {
+				System.out.println("Failed to load inventory snapshot, falling back to " + INVENTORY_FILE + ": " + e.getMessage());
+			}
+		}
+		return new InventoryManager(INVENTORY_FILE);
+	}
+
+	/**
+	 * Writes the current inventory to the binary snapshot so the next startup is fast.
+	 * When a journal is open this is a checkpoint, and the journal segments it replaces are deleted.
+	 * @return true if the snapshot was written
+	 */
+	public boolean saveSnapshot() {
+		try {
+			inventoryManager.checkpoint(SNAPSHOT_FILE);
+			return true;
+		}
+		catch (IOException e) {
+			System.out.println("Failed to save inventory snapshot: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Opens the inventory journal, replays the changes it holds into the inventory and records every
+	 * later change in it, so that sales survive a crash. A journal older than inventory.json is discarded,
+	 * since the edited file replaces the inventory it was recorded against.
+	 * @return true if the journal was opened
+	 */
+	public boolean openJournal() {
+		try {
+			List<Path> segments = InventoryJournal.segmentFiles(JOURNAL_FILE);
+			if (!segments.isEmpty() && segments.get(segments.size() - 1).toFile().lastModified() < new File(INVENTORY_FILE).lastModified()) {
+				System.out.println("Discarding inventory journal older than " + INVENTORY_FILE);
+				for (Path segment : segments) {
+					Files.delete(segment);
+				}
+			}
+			inventoryManager.setJournal(InventoryJournal.open(JOURNAL_FILE, inventoryManager));
+			return true;
+		}
+		catch (IOException e) {
+			System.out.println("Failed to open inventory journal, changes will not be persisted: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Starts writing checkpoints in the background every {@value #CHECKPOINT_INTERVAL_PROPERTY} seconds,
+	 * which keeps the journal, and with it the time needed to recover after a crash, short.
+	 */
+	public void startCheckpoints() {
+		long interval = Long.getLong(CHECKPOINT_INTERVAL_PROPERTY, 300);
+		if (interval <= 0) {
+			return;
+		}
+		checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "inventory-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkpointer.scheduleWithFixedDelay(this::saveSnapshot, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Starts ending idle shopper sessions and releasing expired stock reservations in the background,
+	 * see {@link CartService} and {@link InventoryManager#releaseExpiredReservations(long)}.
+	 */
+	public void startCartExpiry() {
+		cartService.start();
+		reservationSweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "reservation-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reservationSweeper.scheduleWithFixedDelay(() -> inventoryManager.releaseExpiredReservations(System.currentTimeMillis()),
+				1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Starts applying edits of inventory.json to the running store if the
+	 * {@value #WATCH_INVENTORY_PROPERTY} system property is set. Only the entries that changed are applied.
+	 * @return true if the file is being watched
+	 */
+	public boolean startInventoryWatcher() {
+		if (!Boolean.getBoolean(WATCH_INVENTORY_PROPERTY)) {
+			return false;
+		}
+		try {
+			inventoryWatcher = new InventoryFileWatcher(INVENTORY_FILE, inventoryManager);
+			inventoryWatcher.start();
+			return true;
+		}
+		catch (IOException e) {
+			System.out.println("Failed to watch " + INVENTORY_FILE + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Stops background checkpoints, closes the journal and writes a final snapshot.
+	 * The journal is deleted once the snapshot holds every change it recorded.
+	 * @return true if the snapshot was written
+	 */
+	public boolean shutdown() {
+		cartService.stop();
+		if (reservationSweeper != null) {
+			reservationSweeper.shutdownNow();
+		}
+		if (inventoryWatcher != null) {
+			try {
+				inventoryWatcher.close();
+			}
+			catch (IOException e) {
+				System.out.println("Failed to stop watching " + INVENTORY_FILE + ": " + e.getMessage());
+			}
+		}
+		if (checkpointer != null) {
+			checkpointer.shutdown();
+			try {
+				checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		InventoryJournal journal = inventoryManager.getJournal();
+		if (journal != null) {
+			try {
+				inventoryManager.setJournal(null);
+				journal.close();
+			}
+			catch (IOException e) {
+				System.out.println("Failed to close inventory journal: " + e.getMessage());
+			}
+		}
+		if (!saveSnapshot()) {
+			return false;
+		}
+		try {
+			for (Path segment : InventoryJournal.segmentFiles(JOURNAL_FILE)) {
+				Files.delete(segment);
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Failed to delete inventory journal: " + e.getMessage());
+		}
+		return true;
+	}
+
 	/**
 	 * Returns the inventory manager for this store.
 	 * @return the inventory manager for this store
@@ -45,6 +275,14 @@ public class StoreFront {
 		return inventoryManager;
 	}
 
+	/**
+	 * Returns the shopper sessions of this store.
+	 * @return the cart service holding the carts of concurrent shoppers
+	 */
+	public CartService getCartService() {
+		return cartService;
+	}
+
 	/**
 	 * Updates the inventory with the given map of salable products and their quantities.
 	 * @param updatedInventory a map of salable products and their quantities representing the updated inventory
@@ -56,27 +294,34 @@ public class StoreFront {
 	/**
 	 * Processes a sale by updating the store's inventory with the products and quantities in the given shopping cart.
 	 * The quantity of each product in the inventory is reduced by the quantity of that product in the cart.
+	 * The whole cart is sold at once; if any product is no longer available nothing is sold.
 	 * @param cart the shopping cart containing the products and quantities to be sold
+	 * @return true if the sale was completed, false if it was rejected because of missing stock
 	 */
-	public void processSale(ShoppingCart cart) {
-	    Map<SalableProduct, Integer> products = cart.getProducts();
-	    for (SalableProduct product : products.keySet()) {
-	        int quantity = products.get(product);
-	        inventoryManager.reduceQuantity(product, quantity);
-	    }
+	public boolean processSale(ShoppingCart cart) {
+	    return inventoryManager.processSale(cart);
 	}
 	
 	/**
-	 * Processes cancel of sale by updating the store's inventory with the products and quantities in the given shopping cart.
-	 * The quantity of each product in the inventory is increased by the quantity of that product in the cart.
-	 * @param cart the shopping cart containing the products and quantities to be returned
+	 * Reserves stock of a product for a shopping cart for {@value #RESERVATION_TTL_PROPERTY} seconds, so that it
+	 * cannot be sold to anyone else before the cart is checked out with {@link #processSale(ShoppingCart)}.
+	 * @param cart the shopping cart the stock is held for
+	 * @param product the product to reserve
+	 * @param quantity the quantity to reserve
+	 * @return true if the stock was reserved, false if not enough of it is available
+	 */
+	public boolean reserve(ShoppingCart cart, SalableProduct product, int quantity) {
+	    return inventoryManager.reserve(cart, product, quantity, reservationTtlMillis);
+	}
+
+	/**
+	 * Processes cancel of sale by releasing the stock reserved for the given shopping cart.
+	 * Nothing has been taken out of the inventory before a sale, so the quantities in stock are unchanged;
+	 * the released stock can be sold to other carts again.
+	 * @param cart the shopping cart whose sale is cancelled
 	 */	
 	public void processCancel(ShoppingCart cart) {
-	    Map<SalableProduct, Integer> products = cart.getProducts();
-	    for (SalableProduct product : products.keySet()) {
-	        int quantity = products.get(product);
-	        inventoryManager.increaseQuantity(product, quantity);
-	    }
+	    inventoryManager.releaseReservations(cart);
 	}
 	
 	
@@ -102,7 +347,11 @@ public class StoreFront {
 	 */
 	public static void main(String[] args) {	
 		// We create a new store with an established inventory, as well as an empty shopping cart for the user
-		StoreFront store = new StoreFront();
+		StoreFront store = new StoreFront(loadInventory());
+		store.openJournal();
+		store.startCheckpoints();
+		store.startCartExpiry();
+		store.startInventoryWatcher();
 		Scanner scanner = new Scanner(System.in);
 	    boolean done = false;
 	    ShoppingCart cart = new ShoppingCart();
@@ -118,13 +367,10 @@ public class StoreFront {
 	        String input = scanner.next();
 	        switch (input) {
 	            case "1":
-	            	// Get the current inventory
-	            	Map<String, SalableProduct> initialInventory = store.getInventoryManager().getInventory();
 	            	System.out.println("\nHere's what we've got: \n");
 
-	            	// Organize inventory in alphabetical order 
-	            	List<SalableProduct> productList = new ArrayList<>(initialInventory.values());
-	            	productList.sort(Comparator.comparing(SalableProduct::getName));
+	            	// Get the current inventory in alphabetical order
+	            	Collection<SalableProduct> productList = store.getInventoryManager().getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING);
 
 	            	for (SalableProduct product : productList) {
 	            	    System.out.println(product.getName() + ": " + product.getDescription() + " It costs: $" + product.getPrice() + ". We currently have in stock: " + product.getQuantity() + "\n");
@@ -136,10 +382,8 @@ public class StoreFront {
 	            	 boolean validInput = false;
 	            	 while(!validInput) {
 		         		 
-	            		// Get current inventory 
-	            	    Map<String, SalableProduct> inventory = store.getInventoryManager().getInventory();
-	            	    List<SalableProduct> prodList = new ArrayList<>(inventory.values());
-	    	            prodList.sort(Comparator.comparing(SalableProduct::getName)); // Organizes inventory into alphabetical order as default
+	            		// Alphabetical order is the default
+	            	    InventoryManager.SortOrder sortOrder = InventoryManager.SortOrder.NAME_ASCENDING;
 	    	            	
 	    	            System.out.println("Looking for something specific? We can help organize that.\n");
 	    	            	
@@ -151,25 +395,25 @@ public class StoreFront {
 	    	            System.out.println("4. Descending order based on price");
 	    	            int sortingOption = scanner.nextInt();
 
-	    	            // Sort the products based on the selected sorting option
+	    	            // Pick the sorted view based on the selected sorting option
 	    	            switch (sortingOption) {
 	    	                case 1:
-	    	                    prodList.sort(Comparator.comparing(SalableProduct::getName));
+	    	                    sortOrder = InventoryManager.SortOrder.NAME_ASCENDING;
 	    	                    break;
 	    	                case 2:
-	    	                    prodList.sort(Comparator.comparing(SalableProduct::getName).reversed());
+	    	                    sortOrder = InventoryManager.SortOrder.NAME_DESCENDING;
 	    	                    break;
 	    	                case 3:
-	    	                    prodList.sort(Comparator.comparing(SalableProduct::getPrice));
+	    	                    sortOrder = InventoryManager.SortOrder.PRICE_ASCENDING;
 	    	                    break;
 	    	                case 4:
-	    	                    prodList.sort(Comparator.comparing(SalableProduct::getPrice).reversed());
+	    	                    sortOrder = InventoryManager.SortOrder.PRICE_DESCENDING;
 	    	                    break;
 	    	                default:
 	    	                   System.out.println("Invalid option. Displaying products in alphabetical order instead: \n");
 	    	            }
 
-	    	           for (SalableProduct product : prodList) {
+	    	           for (SalableProduct product : store.getInventoryManager().getSortedProducts(sortOrder)) {
 	    	        	   System.out.println(product.getName() + ": " + product.getDescription() + " It costs: $" + product.getPrice() + ". We currently have in stock: " + product.getQuantity() + "\n");
 	    	            }
 	            	    	
@@ -178,16 +422,11 @@ public class StoreFront {
 	            	    System.out.println("Please enter the quantity of " + productName + " you want to add:");
 	            	    int quantity = scanner.nextInt();
 
-	            	    SalableProduct product = null;
-	            	    	for (SalableProduct p : inventory.values()) {
-	            	    		if (p.getName().toLowerCase().equals(productName)) { // Compare lowercase product names
-	            	    			product = p;
-	            	    			break;
-	            	    		}
-	            	    	}
+	            	    SalableProduct product = store.getInventoryManager().findProduct(productName); // Case-insensitive lookup
 	            	    	if (product != null) {
-	            	    		int availableQuantity = product.getQuantity();
-	            	    		if (quantity > availableQuantity) {
+	            	    		// Hold the stock for this cart until checkout instead of taking it out of the inventory now
+	            	    		if (!store.reserve(cart, product, quantity)) {
+	            	    			int availableQuantity = store.getInventoryManager().getAvailableQuantity(product);
 	            	    			System.out.println("Sorry, we don't have that many. We currently have: " + availableQuantity + " " +
 	            	                    product.getName() + "(s) available.\n");
 	            	    		} 
@@ -201,12 +440,6 @@ public class StoreFront {
 	            	    	else {
 	            	    		System.out.println("Sorry, we don't have " + productName + " in our inventory.\n");
 	            	    	}
-	            	    	
-	            	    	// Reduce the quantity of products in the inventory
-	            	        Map<SalableProduct, Integer> lessInventory = cart.getProducts();
-	            	        for (SalableProduct products: lessInventory.keySet()) {
-	            	            store.getInventoryManager().reduceQuantity(product, quantity);
-	            	        }                  
 	            	    }
 	            	   break;
 	            	    
@@ -234,9 +467,13 @@ public class StoreFront {
 	                    String userInput = scanner.next().toUpperCase();
 	                    while (true) {
 	                        if (userInput.equals("Y")) {
-	                            store.processSale(cart);
-	                            System.out.println("Thank you for your purchase!\n");
-	                            cart.clear();
+	                            if (store.processSale(cart)) {
+	                                System.out.println("Thank you for your purchase!\n");
+	                                cart.clear();
+	                            }
+	                            else {
+	                                System.out.println("Sorry, some items in your cart are no longer available in the requested quantity. Nothing was charged.\n");
+	                            }
 	                            break;
 	                        }
 	                        if (userInput.equals("N")) {
@@ -261,6 +498,7 @@ public class StoreFront {
 	                
 	                switch (cartOption) {
 	                    case "1":
+	                        store.getInventoryManager().releaseReservations(cart);
 	                        cart.clear();
 	                        System.out.println("Your shopping cart has been cleared.\n");
 	                        break;
@@ -269,18 +507,11 @@ public class StoreFront {
 	                        String productName = scanner.next().toLowerCase();
 
 	                        // Check if the product is in the cart
-	                        SalableProduct productToRemove = null;
-
-	                        for (SalableProduct product : cart.getProducts().keySet()) {
-	                            if (product.getName().toLowerCase().equals(productName)) {
-	                                productToRemove = product;
-	                                break;
-	                            }
-	                        }
+	                        SalableProduct productToRemove = cart.findProduct(productName);
 	                        if (productToRemove != null) {
 	                            cart.removeProduct(productToRemove, 1); // Remove only one quantity of the product
 	                            System.out.println("Removed 1 " + productToRemove.getName() + " from your shopping cart.\n");
-	                            store.getInventoryManager().increaseQuantity(productToRemove, 1); // Increase the quantity in the store's inventory
+	                            store.getInventoryManager().releaseReservation(cart, productToRemove, 1); // Give the reserved unit back to the store
 	                        } 
 	                        else {
 	                            System.out.println("The product is not in your shopping cart.\n");
@@ -297,6 +528,7 @@ public class StoreFront {
 	            case "5":
 	            	//Closes store menu and exits program
 	                done = true;
+	                store.shutdown();
 	                System.out.println("Thanks for stopping by! Goodbye!");
 	                System.exit(0);
 	            default:
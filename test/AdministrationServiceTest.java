@@ -0,0 +1,434 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import adminapp.AdminBinaryClient;
+import adminapp.AdminBinaryProtocol;
+import adminapp.AdminClient;
+import adminapp.AdministrationService;
+import storeapp.Armor;
+import storeapp.InventoryManager;
+import storeapp.InventoryPatch;
+import storeapp.SalableProduct;
+import storeapp.StoreFront;
+import storeapp.Weapon;
+
+/**
+ * A JUnit test class for the AdministrationService class
+ * @author rargueta
+ *
+ */
+public class AdministrationServiceTest {
+
+	private InventoryManager inventoryManager;
+	private AdministrationService service;
+
+	@Before
+	public void setUp() {
+		inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		service = new AdministrationService(new StoreFront(inventoryManager), 0);
+	}
+
+	@After
+	public void tearDown() {
+		service.stop();
+	}
+
+	/**
+	 * Sends one command on a new connection and returns the response.
+	 *
+	 * @param command the command to send
+	 * @return the response
+	 */
+	private String send(String command) throws IOException {
+		try (AdminClient client = new AdminClient("127.0.0.1", service.getPort())) {
+			return client.send(command);
+		}
+	}
+
+	/**
+	 * Test case for running commands through the shared dispatcher.
+	 */
+	@Test
+	public void testProcessCommand() {
+		assertEquals("Invalid command: X", service.processCommand("X"));
+		assertTrue(service.processCommand("R").contains("\"Rope\""));
+	}
+
+	/**
+	 * Test case for filtering by type, price and prefix, and following the page cursor.
+	 */
+	@Test
+	public void testFilteredRetrievePages() throws Exception {
+		for (int i = 0; i < 25; i++) {
+			inventoryManager.addProduct(new Weapon(String.format("Sword %02d", i), null, 10 * i, 1, 5));
+			inventoryManager.addProduct(new Armor(String.format("Shield %02d", i), null, 10 * i, 1, 5));
+		}
+		service.start(AdministrationService.Mode.NIO);
+		ObjectMapper mapper = new ObjectMapper();
+		List<String> names = new ArrayList<>();
+		try (AdminClient client = new AdminClient("127.0.0.1", service.getPort())) {
+			String after = null;
+			int pages = 0;
+			do {
+				String filter = "{\"prefix\": \"S\", \"type\": \"weapon\", \"minPrice\": 50, \"maxPrice\": 200, \"limit\": 4"
+						+ (after == null ? "" : ", \"after\": \"" + after + "\"") + "}";
+				JsonNode page = mapper.readTree(client.send("R " + filter));
+				for (JsonNode product : page.get("products")) {
+					names.add(product.get("name").asText());
+				}
+				after = page.get("next").isNull() ? null : page.get("next").asText();
+				pages++;
+			} while (after != null);
+			assertEquals(4, pages);
+			assertTrue(client.send("R {\"type\": \"gadget\"}").startsWith("Invalid filter"));
+		}
+		List<String> expected = new ArrayList<>();
+		for (int i = 5; i <= 20; i++) {
+			expected.add(String.format("Sword %02d", i));
+		}
+		assertEquals(expected, names);
+	}
+
+	/**
+	 * Test case for streaming a retrieve response far larger than the server's write queue.
+	 */
+	@Test
+	public void testLargeStreamedRetrieve() throws Exception {
+		for (int i = 0; i < 50_000; i++) {
+			inventoryManager.addProduct(new SalableProduct(String.format("Item %06d", i), "A product with a long enough description", i, 1));
+		}
+		service.start(AdministrationService.Mode.NIO);
+		try (AdminClient client = new AdminClient("127.0.0.1", service.getPort())) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			client.send("R", body);
+			JsonNode products = new ObjectMapper().readTree(body.toByteArray());
+			assertEquals(50_001, products.size());
+			assertEquals(49_999, products.get("Item 049999").get("price").asInt());
+			// The connection is still usable afterwards
+			assertEquals("Invalid command: X", client.send("X"));
+		}
+	}
+
+	/**
+	 * Test case for clients that ask for large listings and do not read them, which must not hold the
+	 * workers that serve everyone else, and whose listings carry on once they read.
+	 */
+	@Test(timeout = 60_000)
+	public void testSlowReadersDoNotBlockOthers() throws Exception {
+		// Each response is far larger than the socket buffers and the server's write queue together
+		String description = "A product with a description long enough to fill the socket buffers. ".repeat(4);
+		for (int i = 0; i < 50_000; i++) {
+			inventoryManager.addProduct(new SalableProduct(String.format("Item %06d", i), description, i, 1));
+		}
+		service.start(AdministrationService.Mode.NIO);
+		try (Socket cached = slowReader(); Socket streamed = slowReader()) {
+			// One client gets the cached listing and the other streamed pages; neither reads a byte yet
+			cached.getOutputStream().write("R\n".getBytes(StandardCharsets.UTF_8));
+			streamed.getOutputStream().write("R {\"limit\": 10000}\n".repeat(5).getBytes(StandardCharsets.UTF_8));
+			Thread.sleep(500);
+			ExecutorService client = Executors.newSingleThreadExecutor();
+			try {
+				Future<String> metrics = client.submit(() -> send("M"));
+				assertTrue(metrics.get(10, TimeUnit.SECONDS).startsWith("Uptime"));
+			}
+			finally {
+				client.shutdownNow();
+			}
+
+			// The listing picks up where it stopped once the client reads
+			DataInputStream in = new DataInputStream(new BufferedInputStream(cached.getInputStream()));
+			StringBuilder length = new StringBuilder();
+			for (int b = in.read(); b != '\n'; b = in.read()) {
+				length.append((char) b);
+			}
+			byte[] body = new byte[Integer.parseInt(length.toString())];
+			in.readFully(body);
+			assertEquals(50_001, new ObjectMapper().readTree(body).size());
+		}
+	}
+
+	/**
+	 * Connects a client with a small receive buffer, so that a response it does not read soon backs up to the server.
+	 *
+	 * @return the connected socket
+	 */
+	private Socket slowReader() throws IOException {
+		Socket socket = new Socket();
+		socket.setReceiveBufferSize(4096);
+		socket.connect(new InetSocketAddress("127.0.0.1", service.getPort()));
+		return socket;
+	}
+
+	/**
+	 * Test case for the binary protocol on the NIO server.
+	 */
+	@Test
+	public void testBinaryProtocol() throws IOException {
+		service.start(AdministrationService.Mode.NIO);
+		assertBinaryProtocol();
+	}
+
+	/**
+	 * Test case for the binary protocol on a connection served by its own thread.
+	 */
+	@Test
+	public void testBinaryProtocolOnConnectionThread() throws IOException {
+		service.start(AdministrationService.Mode.PLATFORM_THREADS);
+		assertBinaryProtocol();
+	}
+
+	/**
+	 * Test case for binary listings being smaller than JSON ones.
+	 */
+	@Test
+	public void testBinaryRetrieveIsCompact() throws IOException {
+		for (int i = 0; i < 1000; i++) {
+			inventoryManager.addProduct(new Weapon(String.format("Sword %04d", i), "A sharp sword", 100 + i, 3, 40));
+		}
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		service.writeResponse("R", json);
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		service.writeBinaryResponse(AdminBinaryProtocol.OP_RETRIEVE, new byte[0], binary);
+		assertTrue(binary.size() * 2 < json.size());
+	}
+
+	/**
+	 * Restocks, retrieves and runs a text command over the binary protocol, next to a text client.
+	 */
+	private void assertBinaryProtocol() throws IOException {
+		List<InventoryPatch.Operation> restock = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			restock.add(InventoryPatch.Operation.upsert(new Armor(String.format("Shield %04d", i), i % 2 == 0 ? "Round" : null, i, 2, 7)));
+		}
+		restock.add(InventoryPatch.Operation.adjust("Rope", 5));
+		try (AdminBinaryClient client = new AdminBinaryClient("127.0.0.1", service.getPort())) {
+			assertEquals("Patch applied: 5001 changes.", client.patch(InventoryPatch.of(restock)));
+			assertTrue(client.patch(InventoryPatch.of(List.of(InventoryPatch.Operation.adjust("Rope", -100)))).startsWith("Patch rejected"));
+
+			List<SalableProduct> products = new ArrayList<>();
+			assertNull(client.retrieve(null, products::add));
+			assertEquals(5001, products.size());
+			assertEquals("Rope", products.get(0).getName());
+			assertEquals(15, products.get(0).getQuantity());
+			Armor shield = (Armor) products.get(4001);
+			assertEquals("Shield 4000", shield.getName());
+			assertEquals("Round", shield.getDescription());
+			assertEquals(7, shield.getDefense());
+
+			List<SalableProduct> page = new ArrayList<>();
+			assertEquals("Shield 0001", client.retrieve("{\"prefix\": \"Shield\", \"limit\": 2}", page::add));
+			assertEquals(2, page.size());
+
+			assertEquals("Invalid command: X", client.command("X"));
+		}
+		// Text clients are still served
+		assertTrue(send("R").contains("\"Shield 4999\""));
+	}
+
+	/**
+	 * Test case for retrievals of an unchanged inventory sharing one serialization, and for
+	 * changes showing up in the next retrieval.
+	 */
+	@Test
+	public void testRetrieveCacheFollowsVersion() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		List<Future<String>> responses = new ArrayList<>();
+		for (int i = 0; i < 32; i++) {
+			responses.add(clients.submit(() -> service.processCommand("R")));
+		}
+		String first = service.processCommand("R");
+		for (Future<String> response : responses) {
+			assertEquals(first, response.get());
+		}
+		clients.shutdown();
+		assertTrue(first.contains("\"quantity\":10"));
+
+		service.processCommand("P [{\"op\": \"set\", \"name\": \"Rope\", \"quantity\": 7}]");
+		assertTrue(service.processCommand("R").contains("\"quantity\":7"));
+
+		inventoryManager.addProduct(new SalableProduct("Torch", null, 2, 3));
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		service.writeBinaryResponse(AdminBinaryProtocol.OP_RETRIEVE, new byte[0], binary);
+		assertTrue(binary.toString(StandardCharsets.UTF_8).contains("Torch"));
+	}
+
+	/**
+	 * Test case for the metrics reported by the M command.
+	 */
+	@Test
+	public void testMetricsCommand() throws IOException {
+		service.processCommand("R");
+		service.processCommand("R");
+		service.processCommand("P [{\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": -100}]");
+		service.processCommand("Nonsense 1");
+		service.processCommand("Nonsense 2");
+		service.writeResponse("R {\"limit\": 0}", new ByteArrayOutputStream());
+
+		String report = service.processCommand("M");
+		assertMetric(report, "R", 3, 1);
+		assertMetric(report, "P", 1, 1);
+		assertMetric(report, "invalid", 2, 2);
+		assertMetric(report, "InventoryManager.applyPatch", 1, 1);
+		assertTrue(report.contains("p999"));
+	}
+
+	/**
+	 * Test case for the listing metrics, which time the whole listing rather than only looking up the products.
+	 */
+	@Test
+	public void testListingMetrics() throws IOException {
+		service.writeResponse("R", new ByteArrayOutputStream());
+		service.writeResponse("R", new ByteArrayOutputStream());
+		service.writeResponse("R {\"limit\": 5}", new ByteArrayOutputStream());
+
+		// The second full listing comes from the cache, so only the first one is listed
+		String report = service.processCommand("M");
+		assertMetric(report, "R", 3, 0);
+		assertMetric(report, "ListingWriter.all", 1, 0);
+		assertMetric(report, "ListingWriter.page", 1, 0);
+	}
+
+	/**
+	 * Checks the count and error count of one line of the metrics report.
+	 *
+	 * @param report the report
+	 * @param name the name of the metric
+	 * @param count the expected count
+	 * @param errors the expected number of errors
+	 */
+	private static void assertMetric(String report, String name, long count, long errors) {
+		for (String line : report.split("\n")) {
+			String[] columns = line.trim().split("\\s+");
+			if (columns[0].equals(name)) {
+				assertEquals(line, count, Long.parseLong(columns[1]));
+				assertEquals(line, errors, Long.parseLong(columns[2]));
+				return;
+			}
+		}
+		fail("No metric " + name + " in " + report);
+	}
+
+	/**
+	 * Test case for the U command adding the products of the update file, which has the same layout as inventory.json.
+	 */
+	@Test
+	public void testUpdateCommand() throws IOException {
+		File update = File.createTempFile("update", ".json");
+		try {
+			Files.writeString(update.toPath(), "{\"Rope\": {\"name\": \"Rope\", \"price\": 5, \"quantity\": 2},"
+					+ " \"Axe\": {\"name\": \"Axe\", \"price\": 150, \"quantity\": 1, \"damage\": 35}}");
+			System.setProperty(AdministrationService.UPDATE_FILE_PROPERTY, update.getPath());
+			assertEquals("Update command processed successfully.", service.processCommand("U"));
+			assertEquals(12, inventoryManager.getProduct("Rope").getQuantity());
+			assertEquals(35, ((Weapon) inventoryManager.getProduct("Axe")).getDamage());
+
+			Files.writeString(update.toPath(), "{\"Rope\": ");
+			assertTrue(service.processCommand("U").startsWith("Failed"));
+		}
+		finally {
+			System.clearProperty(AdministrationService.UPDATE_FILE_PROPERTY);
+			update.delete();
+		}
+	}
+
+	/**
+	 * Test case for an idle client not holding up other clients of the NIO server.
+	 */
+	@Test
+	public void testIdleClientDoesNotBlockOthers() throws Exception {
+		service.start(AdministrationService.Mode.NIO);
+		assertServesClientsBesideIdleOne();
+	}
+
+	/**
+	 * Test case for serving each connection on its own virtual thread.
+	 */
+	@Test
+	public void testVirtualThreadMode() throws Exception {
+		service.start(AdministrationService.Mode.VIRTUAL_THREADS);
+		assertServesClientsBesideIdleOne();
+	}
+
+	/**
+	 * Test case for pipelining many commands over one NIO connection.
+	 */
+	@Test
+	public void testPipelinedCommands() throws IOException {
+		service.start(AdministrationService.Mode.NIO);
+		assertPipelinesCommands();
+	}
+
+	/**
+	 * Test case for pipelining many commands over one connection served by its own thread.
+	 */
+	@Test
+	public void testPipelinedCommandsOnConnectionThread() throws IOException {
+		service.start(AdministrationService.Mode.PLATFORM_THREADS);
+		assertPipelinesCommands();
+	}
+
+	/**
+	 * Sends a long batch of alternating patch and invalid commands over one connection and checks
+	 * that every command is answered, in order.
+	 */
+	private void assertPipelinesCommands() throws IOException {
+		List<String> commands = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			commands.add(i % 2 == 0 ? "P [{\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": 1}]" : "X" + i);
+		}
+		try (AdminClient client = new AdminClient("127.0.0.1", service.getPort())) {
+			List<String> responses = client.sendAll(commands);
+			assertEquals(1000, responses.size());
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(i % 2 == 0 ? "Patch applied: 1 changes." : "Invalid command: X" + i, responses.get(i));
+			}
+			// The connection is still usable afterwards
+			assertTrue(client.send("R").contains("\"quantity\":510"));
+		}
+	}
+
+	/**
+	 * Connects a client that never sends anything and checks that 50 other clients are still served.
+	 */
+	private void assertServesClientsBesideIdleOne() throws Exception {
+		try (Socket idle = new Socket("127.0.0.1", service.getPort())) {
+			// The idle client never sends a command; everyone else is still served
+			assertTrue(idle.isConnected());
+			ExecutorService clients = Executors.newFixedThreadPool(16);
+			List<Future<String>> responses = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				responses.add(clients.submit(() -> send("P [{\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": 1}]")));
+			}
+			for (Future<String> response : responses) {
+				assertEquals("Patch applied: 1 changes.", response.get());
+			}
+			clients.shutdown();
+		}
+		assertEquals(60, inventoryManager.getProduct("Rope").getQuantity());
+	}
+}
@@ -0,0 +1,178 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import storeapp.CartService;
+import storeapp.SalableProduct;
+import storeapp.ShoppingCart;
+
+/**
+ * A JUnit test class for the CartService class
+ * @author rargueta
+ *
+ */
+public class CartServiceTest {
+
+	private static final long TIMEOUT = 60_000;
+
+	private AtomicLong clock;
+	private List<String> ended;
+	private CartService cartService;
+
+	/**
+	 * Creates a service holding at most three sessions on a manual clock for each test case.
+	 */
+	@Before
+	public void setUp() {
+		clock = new AtomicLong(1_000_000);
+		ended = new ArrayList<>();
+		cartService = new CartService(3, TIMEOUT, (sessionId, cart) -> ended.add(sessionId), clock::get);
+	}
+
+	/**
+	 * Test case for the openCart(String), getCart(String) and closeSession(String) methods.
+	 */
+	@Test
+	public void testSessions() {
+		ShoppingCart cart = cartService.openCart("alice");
+		cart.addProduct(new SalableProduct("Product 1", "Description 1", 10, 5), 2);
+
+		// Verify that the same session gets the same cart back
+		assertSame(cart, cartService.openCart("alice"));
+		assertSame(cart, cartService.getCart("alice"));
+		assertNull(cartService.getCart("bob"));
+		assertEquals(1, cartService.size());
+
+		// Verify that a closed session is gone without being reported as ended
+		assertSame(cart, cartService.closeSession("alice"));
+		assertNull(cartService.getCart("alice"));
+		assertEquals(0, cartService.size());
+		assertTrue(ended.isEmpty());
+	}
+
+	/**
+	 * Test case for the expire(long) method.
+	 */
+	@Test
+	public void testIdleExpiry() {
+		cartService.openCart("alice");
+		cartService.openCart("bob");
+
+		// Only bob is used halfway through the timeout
+		clock.addAndGet(TIMEOUT / 2);
+		cartService.getCart("bob");
+		assertEquals(0, cartService.expire(clock.get()));
+
+		// Verify that alice expires after the timeout plus at most one tick, and bob stays
+		clock.addAndGet(TIMEOUT / 2 + TIMEOUT / 10);
+		assertEquals(1, cartService.expire(clock.get()));
+		assertEquals(List.of("alice"), ended);
+		assertNull(cartService.getCart("alice"));
+		assertNotNull(cartService.getCart("bob"));
+
+		// Verify that a long pause expires everything at once
+		clock.addAndGet(100 * TIMEOUT);
+		assertEquals(1, cartService.expire(clock.get()));
+		assertEquals(0, cartService.size());
+	}
+
+	/**
+	 * Test case for evicting sessions beyond the maximum.
+	 */
+	@Test
+	public void testEviction() {
+		cartService.openCart("alice");
+		clock.addAndGet(1000);
+		cartService.openCart("bob");
+		clock.addAndGet(1000);
+		cartService.openCart("carol");
+		clock.addAndGet(1000);
+
+		// alice is the oldest session but was used last, so bob is the least recently used
+		cartService.getCart("alice");
+		cartService.openCart("dave");
+		assertEquals(3, cartService.size());
+		assertEquals(List.of("bob"), ended);
+		assertNotNull(cartService.getCart("alice"));
+		assertNull(cartService.getCart("bob"));
+	}
+
+	/**
+	 * Test case for many sessions started and used concurrently.
+	 */
+	@Test
+	public void testConcurrentSessions() throws InterruptedException {
+		CartService service = new CartService(1000, TIMEOUT, null);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			int thread = i;
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					service.openCart("session " + thread + "-" + j % 500);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Verify that the limit holds after 4000 distinct sessions were started
+		assertEquals(1000, service.size());
+	}
+
+	/**
+	 * Test case for eviction after the wheel fell behind, when sessions are due a whole turn of the wheel
+	 * or more ahead of the last processed tick and share buckets with sessions due sooner.
+	 */
+	@Test(timeout = 10_000)
+	public void testEvictionAfterLongPause() {
+		CartService service = new CartService(2, 1000, (sessionId, cart) -> ended.add(sessionId), clock::get);
+		long start = clock.get();
+		service.openCart("old");
+
+		// Nothing ran the wheel for ten timeouts; starting sessions beyond the limit must not hang
+		clock.set(start + 10_000);
+		service.openCart("b1");
+		service.openCart("b2");
+		assertEquals(2, service.size());
+		assertEquals(List.of("old"), ended);
+
+		// A third session evicts exactly one of the two, both being due at the same tick
+		service.openCart("b3");
+		assertEquals(2, service.size());
+		assertEquals(2, ended.size());
+		assertNotNull(service.getCart("b3"));
+	}
+
+	/**
+	 * Test case for eviction when sessions were used again after they were scheduled.
+	 */
+	@Test(timeout = 10_000)
+	public void testEvictionOfUsedSessions() {
+		CartService service = new CartService(2, 1000, (sessionId, cart) -> ended.add(sessionId), clock::get);
+		long start = clock.get();
+		service.openCart("a");
+		service.openCart("b");
+
+		// Both are used again, long after they were scheduled, without the wheel running
+		clock.set(start + 900);
+		service.getCart("a");
+		clock.set(start + 950);
+		service.getCart("b");
+		service.openCart("c");
+
+		// a was used least recently, so it is the one evicted
+		assertEquals(2, service.size());
+		assertEquals(List.of("a"), ended);
+		assertNotNull(service.getCart("b"));
+		assertNotNull(service.getCart("c"));
+	}
+}
@@ -0,0 +1,94 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import storeapp.InventoryFileWatcher;
+import storeapp.InventoryManager;
+import storeapp.SalableProduct;
+import storeapp.Weapon;
+
+/**
+ * A JUnit test class for the InventoryFileWatcher class
+ * @author rargueta
+ *
+ */
+public class InventoryFileWatcherTest {
+
+	private static final String INVENTORY_FILE = "inventorywatchertest.json";
+
+	/**
+	 * Deletes the inventory file written by a test case.
+	 */
+	@After
+	public void tearDown() {
+		new File(INVENTORY_FILE).delete();
+	}
+
+	/**
+	 * Writes the given JSON to the test inventory file and makes its timestamp differ from the last write.
+	 *
+	 * @param json the contents of the file
+	 */
+	private static void writeInventory(String json) throws IOException {
+		File file = new File(INVENTORY_FILE);
+		long previous = file.lastModified();
+		try (FileWriter writer = new FileWriter(file)) {
+			writer.write(json);
+		}
+		file.setLastModified(Math.max(System.currentTimeMillis(), previous + 1000));
+	}
+
+	/**
+	 * Test case for applying only the entries that changed.
+	 */
+	@Test
+	public void testReloadAppliesChangedEntries() throws IOException {
+		writeInventory("{\"Sword\": {\"name\": \"Sword\", \"price\": 100, \"quantity\": 5, \"damage\": 20},"
+				+ " \"Rope\": {\"name\": \"Rope\", \"price\": 5, \"quantity\": 10},"
+				+ " \"Torch\": {\"name\": \"Torch\", \"price\": 2, \"quantity\": 3}}");
+		InventoryManager inventoryManager = new InventoryManager(INVENTORY_FILE);
+		InventoryFileWatcher watcher = new InventoryFileWatcher(INVENTORY_FILE, inventoryManager);
+		inventoryManager.reduceQuantity(new SalableProduct("Sword", null, 100, 5), 2);
+		SalableProduct rope = inventoryManager.getProduct("Rope");
+
+		// Nothing changed yet
+		assertEquals(0, watcher.reload());
+
+		// Change the sword's damage, restock the rope, drop the torch and add a shield
+		writeInventory("{\"Sword\": {\"name\": \"Sword\", \"price\": 100, \"quantity\": 5, \"damage\": 25},"
+				+ " \"Rope\": {\"name\": \"Rope\", \"price\": 5, \"quantity\": 40},"
+				+ " \"Shield\": {\"name\": \"Shield\", \"price\": 80, \"quantity\": 1, \"defense\": 30}}");
+		assertEquals(4, watcher.reload());
+
+		// Verify that the sword kept its sold-down quantity and that the unchanged rope object was updated in place
+		Weapon sword = (Weapon) inventoryManager.getProduct("Sword");
+		assertEquals(25, sword.getDamage());
+		assertEquals(3, sword.getQuantity());
+		assertSame(rope, inventoryManager.getProduct("Rope"));
+		assertEquals(40, rope.getQuantity());
+		assertNull(inventoryManager.getProduct("Torch"));
+		assertEquals(1, inventoryManager.getProduct("Shield").getQuantity());
+	}
+
+	/**
+	 * Test case for a file that cannot be parsed leaving the inventory untouched.
+	 */
+	@Test
+	public void testReloadIgnoresIncompleteFile() throws IOException {
+		writeInventory("{\"Rope\": {\"name\": \"Rope\", \"price\": 5, \"quantity\": 10}}");
+		InventoryManager inventoryManager = new InventoryManager(INVENTORY_FILE);
+		InventoryFileWatcher watcher = new InventoryFileWatcher(INVENTORY_FILE, inventoryManager);
+
+		writeInventory("{\"Rope\": {\"name\": \"Rope\", \"price\": 7, \"quantity\": 10}, \"Torch\": {\"na");
+		assertEquals(0, watcher.reload());
+		assertEquals(5, inventoryManager.getProduct("Rope").getPrice());
+		assertNull(inventoryManager.getProduct("Torch"));
+	}
+}
@@ -0,0 +1,202 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import storeapp.InventoryJournal;
+import storeapp.InventoryManager;
+import storeapp.SalableProduct;
+import storeapp.Weapon;
+
+/**
+ * A JUnit test class for the InventoryJournal class
+ * @author rargueta
+ *
+ */
+public class InventoryJournalTest {
+
+	private static final String JOURNAL_FILE = "inventoryjournaltest.journal";
+	private static final String SNAPSHOT_FILE = "inventoryjournaltest.snapshot";
+
+	/**
+	 * Deletes the journal segments and snapshot written by a test case.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		for (Path segment : InventoryJournal.segmentFiles(JOURNAL_FILE)) {
+			Files.delete(segment);
+		}
+		new File(SNAPSHOT_FILE).delete();
+	}
+
+	/**
+	 * Test case for replaying journaled changes into a fresh inventory.
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		// Record stocking, selling and removing products in the journal
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.setJournal(InventoryJournal.open(JOURNAL_FILE, inventoryManager));
+		inventoryManager.addProduct(new Weapon("Sword", "A sharp blade", 100, 5, 20));
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		inventoryManager.addProduct(new SalableProduct("Torch", null, 2, 3));
+		assertTrue(inventoryManager.tryReduceQuantity(new SalableProduct("Sword", null, 100, 1), 2));
+		inventoryManager.increaseQuantity(new SalableProduct("Rope", null, 5, 1), 4);
+		assertTrue(inventoryManager.setQuantity("Torch", 0));
+		inventoryManager.removeProduct("Rope");
+		inventoryManager.getJournal().close();
+
+		// Verify that replaying the journal rebuilds the same inventory
+		InventoryManager replayed = new InventoryManager();
+		InventoryJournal.open(JOURNAL_FILE, replayed).close();
+		assertEquals(2, replayed.getInventory().size());
+		Weapon sword = (Weapon) replayed.getInventory().get("Sword");
+		assertEquals(3, sword.getQuantity());
+		assertEquals(20, sword.getDamage());
+		assertEquals(0, replayed.getInventory().get("Torch").getQuantity());
+		assertNull(replayed.getInventory().get("Rope"));
+	}
+
+	/**
+	 * Test case for setting the quantity on a stocked product object, which must be journaled and versioned
+	 * like a change made through the inventory.
+	 */
+	@Test
+	public void testReplayProductSetQuantity() throws IOException {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.setJournal(InventoryJournal.open(JOURNAL_FILE, inventoryManager));
+		SalableProduct rope = new SalableProduct("Rope", null, 5, 10);
+		inventoryManager.addProduct(rope);
+		long version = inventoryManager.getVersion();
+		rope.setQuantity(4);
+		assertEquals(4, inventoryManager.getProduct("Rope").getQuantity());
+		assertTrue(inventoryManager.getVersion() > version);
+
+		// Once removed, a product keeps its own quantity and the inventory is left alone
+		SalableProduct torch = new SalableProduct("Torch", null, 2, 3);
+		inventoryManager.addProduct(torch);
+		inventoryManager.removeProduct("Torch");
+		inventoryManager.addProduct(new SalableProduct("Torch", null, 2, 1));
+		torch.setQuantity(9);
+		assertEquals(9, torch.getQuantity());
+		assertEquals(1, inventoryManager.getProduct("Torch").getQuantity());
+		inventoryManager.getJournal().close();
+
+		// Verify that replaying the journal sees the change made on the product
+		InventoryManager replayed = new InventoryManager();
+		InventoryJournal.open(JOURNAL_FILE, replayed).close();
+		assertEquals(4, replayed.getProduct("Rope").getQuantity());
+		assertEquals(1, replayed.getProduct("Torch").getQuantity());
+	}
+
+	/**
+	 * Test case for discarding a record that was only partly written when the store stopped.
+	 */
+	@Test
+	public void testTornRecordIsDiscarded() throws IOException {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.setJournal(InventoryJournal.open(JOURNAL_FILE, inventoryManager));
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		inventoryManager.reduceQuantity(new SalableProduct("Rope", null, 5, 10), 4);
+		inventoryManager.getJournal().close();
+
+		// Cut the last record in half
+		List<Path> segments = InventoryJournal.segmentFiles(JOURNAL_FILE);
+		assertEquals(1, segments.size());
+		long validLength = segments.get(0).toFile().length();
+		try (RandomAccessFile file = new RandomAccessFile(segments.get(0).toFile(), "rw")) {
+			file.setLength(validLength - 3);
+		}
+
+		// Verify that only the complete record is replayed and the journal is usable again
+		InventoryManager replayed = new InventoryManager();
+		InventoryJournal journal = InventoryJournal.open(JOURNAL_FILE, replayed);
+		assertEquals(10, replayed.getInventory().get("Rope").getQuantity());
+		replayed.setJournal(journal);
+		replayed.reduceQuantity(new SalableProduct("Rope", null, 5, 10), 1);
+		journal.close();
+
+		InventoryManager reopened = new InventoryManager();
+		InventoryJournal.open(JOURNAL_FILE, reopened).close();
+		assertEquals(9, reopened.getInventory().get("Rope").getQuantity());
+	}
+
+	/**
+	 * Test case for concurrent sales sharing fsyncs.
+	 */
+	@Test
+	public void testGroupCommit() throws Exception {
+		InventoryManager inventoryManager = new InventoryManager();
+		InventoryJournal journal = InventoryJournal.open(JOURNAL_FILE, inventoryManager);
+		inventoryManager.setJournal(journal);
+		inventoryManager.addProduct(new SalableProduct("Arrow", null, 1, 10000));
+		long syncsBefore = journal.getSyncCount();
+
+		// Sell one arrow at a time from several threads
+		int threads = 8;
+		int salesPerThread = 200;
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(() -> {
+				for (int j = 0; j < salesPerThread; j++) {
+					inventoryManager.tryReduceQuantity(new SalableProduct("Arrow", null, 1, 1), 1);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long syncs = journal.getSyncCount() - syncsBefore;
+		journal.close();
+
+		// Verify that every sale is durable and that sales were committed in groups
+		assertTrue(syncs < threads * salesPerThread);
+		InventoryManager replayed = new InventoryManager();
+		InventoryJournal.open(JOURNAL_FILE, replayed).close();
+		assertEquals(10000 - threads * salesPerThread, replayed.getInventory().get("Arrow").getQuantity());
+	}
+
+	/**
+	 * Test case for a checkpoint truncating the journal while sales continue.
+	 */
+	@Test
+	public void testCheckpoint() throws Exception {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.setJournal(InventoryJournal.open(JOURNAL_FILE, inventoryManager));
+		inventoryManager.addProduct(new SalableProduct("Arrow", null, 1, 5000));
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+
+		// Keep selling arrows while checkpoints are written
+		Thread seller = new Thread(() -> {
+			for (int i = 0; i < 2000; i++) {
+				inventoryManager.tryReduceQuantity(new SalableProduct("Arrow", null, 1, 1), 1);
+			}
+		});
+		seller.start();
+		for (int i = 0; i < 3; i++) {
+			inventoryManager.checkpoint(SNAPSHOT_FILE);
+		}
+		seller.join();
+		inventoryManager.removeProduct("Rope");
+		inventoryManager.getJournal().close();
+
+		// Verify that only the newest segment is left and recovery sees every sale
+		assertEquals(1, InventoryJournal.segmentFiles(JOURNAL_FILE).size());
+		InventoryManager recovered = InventoryManager.fromSnapshot(SNAPSHOT_FILE);
+		InventoryJournal.open(JOURNAL_FILE, recovered).close();
+		assertEquals(3000, recovered.getInventory().get("Arrow").getQuantity());
+		assertNull(recovered.getInventory().get("Rope"));
+	}
+}
@@ -7,11 +7,20 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import storeapp.Armor;
+import storeapp.Health;
 import storeapp.InventoryManager;
+import storeapp.InventoryPatch;
 import storeapp.SalableProduct;
 import storeapp.ShoppingCart;
+import storeapp.Weapon;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -144,6 +153,55 @@ public void testGetInventory() {
         assertEquals(1, inventory.get("Product 2").getQuantity());
 	}
 
+	/**
+	 * Test case for processSale(ShoppingCart) when one line cannot be filled.
+	*/
+	@Test
+	public void testProcessSaleIsAllOrNothing() {
+		// Product 2 only has 3 in stock, so the whole cart must be rejected
+        ShoppingCart cart = new ShoppingCart();
+        cart.addProduct(new SalableProduct("Product 1", "Description 1", 10, 5), 2);
+        cart.addProduct(new SalableProduct("Product 2", "Description 2", 20, 3), 4);
+
+        assertFalse(inventoryManager.processSale(cart));
+
+        // Verify that no line of the cart was sold
+        Map<String, SalableProduct> inventory = inventoryManager.getInventory();
+        assertEquals(5, inventory.get("Product 1").getQuantity());
+        assertEquals(3, inventory.get("Product 2").getQuantity());
+	}
+
+	/**
+	 * Test case for concurrent processSale(ShoppingCart) calls competing for the same products.
+	*/
+	@Test
+	public void testConcurrentProcessSale() throws InterruptedException {
+		SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+		SalableProduct product2 = new SalableProduct("Product 2", "Description 2", 20, 3);
+		AtomicInteger completed = new AtomicInteger();
+
+		// Every cart needs one of each product, so only three carts can be sold
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				ShoppingCart cart = new ShoppingCart();
+				cart.addProduct(product1, 1);
+				cart.addProduct(product2, 1);
+				if (inventoryManager.processSale(cart)) {
+					completed.incrementAndGet();
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(3, completed.get());
+		assertEquals(2, inventoryManager.getInventory().get("Product 1").getQuantity());
+		assertFalse(inventoryManager.getInventory().containsKey("Product 2"));
+	}
+
 	/**
 	 * Test case for the {@link InventoryManager#increaseQuantity(SalableProduct, int)} method.
 	*/
@@ -163,6 +221,109 @@ public void testGetInventory() {
 	assertEquals(8, inventory.get("Product").getQuantity());
 	}
 
+	/**
+	 * Test case for the getVersion() method.
+	*/
+	@Test
+	public void testGetVersion() {
+	SalableProduct product = inventoryManager.getInventory().get("Product 1");
+	long version = inventoryManager.getVersion();
+
+	// Verify that every kind of change bumps the version
+	inventoryManager.increaseQuantity(product, 1);
+	assertTrue(inventoryManager.getVersion() > version);
+	version = inventoryManager.getVersion();
+	inventoryManager.reduceQuantity(product, 1);
+	assertTrue(inventoryManager.getVersion() > version);
+	version = inventoryManager.getVersion();
+	inventoryManager.addProduct(new SalableProduct("Elixir", "Description", 10, 5));
+	assertTrue(inventoryManager.getVersion() > version);
+	version = inventoryManager.getVersion();
+	inventoryManager.removeProduct("Elixir");
+	assertTrue(inventoryManager.getVersion() > version);
+
+	// Verify that reads and changes that change nothing leave it alone
+	version = inventoryManager.getVersion();
+	inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING);
+	inventoryManager.removeProduct("Elixir");
+	assertFalse(inventoryManager.setQuantity("Elixir", 3));
+	assertEquals(version, inventoryManager.getVersion());
+	}
+
+	/**
+	 * Test case for the addProductsFromFile(String) method with a JSON array of products.
+	*/
+	@Test
+	public void testAddProductsFromFile() throws IOException {
+	File update = File.createTempFile("update", ".json");
+	try (FileWriter writer = new FileWriter(update)) {
+		writer.write("[{\"name\":\"Product 1\",\"description\":\"Description 1\",\"price\":10,\"quantity\":2},"
+				+ "{\"name\":\"Potion\",\"price\":7,\"quantity\":4,\"healthAmount\":25}]");
+	}
+	try {
+		// Verify that existing products are restocked and new ones added
+		assertEquals(2, inventoryManager.addProductsFromFile(update.getPath()));
+		assertEquals(7, inventoryManager.getInventory().get("Product 1").getQuantity());
+		assertTrue(inventoryManager.getInventory().get("Potion") instanceof Health);
+		assertEquals(3, inventoryManager.getInventory().size());
+	}
+	finally {
+		update.delete();
+	}
+	}
+
+	/**
+	 * Test case for the findProduct(String) method.
+	*/
+	@Test
+	public void testFindProduct() {
+	// Verify that lookups ignore case
+	SalableProduct product = inventoryManager.getInventory().get("Product 1");
+	assertSame(product, inventoryManager.findProduct("product 1"));
+	assertSame(product, inventoryManager.findProduct("PRODUCT 1"));
+
+	// Verify that the index follows products being added and removed
+	SalableProduct added = new SalableProduct("Elixir", "Description", 10, 5);
+	inventoryManager.addProduct(added);
+	assertSame(added, inventoryManager.findProduct("elixir"));
+	inventoryManager.removeProduct("Elixir");
+	assertNull(inventoryManager.findProduct("elixir"));
+	}
+
+	/**
+	 * Test case for the getSortedProducts(SortOrder) method.
+	*/
+	@Test
+	public void testGetSortedProducts() {
+	// Add a product that sorts first by name but last by price
+	inventoryManager.addProduct(new SalableProduct("Amulet", "Description", 50, 1));
+
+	// Verify every view lists the products in the requested order
+	assertEquals(Arrays.asList("Amulet", "Product 1", "Product 2"), namesOf(inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_ASCENDING)));
+	assertEquals(Arrays.asList("Product 2", "Product 1", "Amulet"), namesOf(inventoryManager.getSortedProducts(InventoryManager.SortOrder.NAME_DESCENDING)));
+	assertEquals(Arrays.asList("Product 1", "Product 2", "Amulet"), namesOf(inventoryManager.getSortedProducts(InventoryManager.SortOrder.PRICE_ASCENDING)));
+	assertEquals(Arrays.asList("Amulet", "Product 2", "Product 1"), namesOf(inventoryManager.getSortedProducts(InventoryManager.SortOrder.PRICE_DESCENDING)));
+
+	// Verify that products sold out or removed drop out of the views
+	inventoryManager.reduceQuantity(new SalableProduct("Amulet", "Description", 50, 1), 1);
+	inventoryManager.removeProduct("Product 2");
+	assertEquals(Arrays.asList("Product 1"), namesOf(inventoryManager.getSortedProducts(InventoryManager.SortOrder.PRICE_ASCENDING)));
+	}
+
+	/**
+	 * Helper method to collect the names of products in iteration order.
+	 *
+	 * @param products the products to collect the names of
+	 * @return the names of the products
+	 */
+	private List<String> namesOf(Collection<SalableProduct> products) {
+		List<String> names = new ArrayList<>();
+		for (SalableProduct product : products) {
+			names.add(product.getName());
+		}
+		return names;
+	}
+
 	/**
 	 * Test case for the removeProduct(String) method.
 	*/
@@ -236,6 +397,297 @@ public void testGetInventory() {
         // Delete the temporary inventory file
         inventoryFile.delete();
     }
-	
-}
 
+	/**
+	 * Test case for loadInventoryFromFile(String) inferring product types from their stats.
+	*/
+	@Test
+	public void testLoadInventoryFromFileInfersProductTypes() throws IOException {
+		File inventoryFile = new File("inventorytypestest.json");
+		try (FileWriter writer = new FileWriter(inventoryFile)) {
+			writer.write("{\"Sword\":{\"name\":\"Sword\",\"price\":100,\"quantity\":2,\"damage\":20},"
+					+ "\"Boots\":{\"name\":\"Boots\",\"price\":100,\"quantity\":5,\"defense\":25},"
+					+ "\"Ginseng\":{\"name\":\"Ginseng\",\"price\":50,\"quantity\":25,\"health\":15}}");
+		}
+
+		inventoryManager.loadInventoryFromFile("inventorytypestest.json");
+
+		// Verify that each entry became the product type matching its stats
+		Map<String, SalableProduct> inventory = inventoryManager.getInventory();
+		assertEquals(20, ((Weapon) inventory.get("Sword")).getDamage());
+		assertEquals(25, ((Armor) inventory.get("Boots")).getDefense());
+		assertEquals(15, ((Health) inventory.get("Ginseng")).getHealthAmount());
+
+		inventoryFile.delete();
+	}
+
+	/**
+	 * Test case for the loadInventoryFromFile(String, LongConsumer) method with progress reporting.
+	*/
+	@Test
+	public void testLoadInventoryFromFileWithProgress() throws IOException {
+		// Create an inventory file large enough to trigger one progress report
+		File inventoryFile = new File("inventoryprogresstest.json");
+		try (FileWriter writer = new FileWriter(inventoryFile)) {
+			writer.write("{");
+			for (int i = 0; i < 100_000; i++) {
+				if (i > 0) {
+					writer.write(",");
+				}
+				writer.write("\"Item " + i + "\":{\"name\":\"Item " + i + "\",\"description\":\"Bulk item\",\"price\":" + i + ",\"quantity\":1}");
+			}
+			writer.write("}");
+		}
+
+		// Load the inventory while recording the progress reports
+		List<Long> reports = new ArrayList<>();
+		inventoryManager.loadInventoryFromFile("inventoryprogresstest.json", reports::add);
+
+		// Verify that the inventory was replaced and progress was reported
+		assertEquals(100_000, inventoryManager.getInventory().size());
+		assertFalse(inventoryManager.getInventory().containsKey("Product 1"));
+		assertEquals(Arrays.asList(100_000L), reports);
+
+		inventoryFile.delete();
+	}
+
+	/**
+	 * Test case for the tryReduceQuantity(SalableProduct, int) method.
+	*/
+	@Test
+	public void testTryReduceQuantity() {
+	// Reducing by more than is in stock must fail and leave the stock untouched
+	SalableProduct product = new SalableProduct("Product 1", "Description 1", 10, 5);
+	assertFalse(inventoryManager.tryReduceQuantity(product, 6));
+	assertEquals(5, inventoryManager.getInventory().get("Product 1").getQuantity());
+
+	// Reducing by an available amount must succeed
+	assertTrue(inventoryManager.tryReduceQuantity(product, 2));
+	assertEquals(3, inventoryManager.getInventory().get("Product 1").getQuantity());
+
+	// Selling the last items removes the product from the inventory
+	assertTrue(inventoryManager.tryReduceQuantity(product, 3));
+	assertFalse(inventoryManager.getInventory().containsKey("Product 1"));
+	}
+
+	/**
+	 * Test case for concurrent quantity updates from several threads.
+	*/
+	@Test
+	public void testConcurrentQuantityUpdates() throws InterruptedException {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	SalableProduct product2 = new SalableProduct("Product 2", "Description 2", 20, 3);
+	AtomicInteger sold = new AtomicInteger();
+
+	// Several buyers compete for Product 1 while restocks of Product 2 arrive
+	Thread[] threads = new Thread[8];
+	for (int i = 0; i < threads.length; i++) {
+		threads[i] = new Thread(() -> {
+			for (int j = 0; j < 1000; j++) {
+				if (inventoryManager.tryReduceQuantity(product1, 1)) {
+					sold.incrementAndGet();
+				}
+				inventoryManager.increaseQuantity(product2, 1);
+			}
+		});
+		threads[i].start();
+	}
+	for (Thread thread : threads) {
+		thread.join();
+	}
+
+	// Verify that nothing was oversold and no restock was lost
+	assertEquals(5, sold.get());
+	assertFalse(inventoryManager.getInventory().containsKey("Product 1"));
+	assertEquals(8003, inventoryManager.getInventory().get("Product 2").getQuantity());
+	}
+
+	/**
+	 * Test case for the reserve(ShoppingCart, SalableProduct, int, long) method.
+	 */
+	@Test
+	public void testReserve() {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	ShoppingCart cart = new ShoppingCart();
+	ShoppingCart otherCart = new ShoppingCart();
+
+	// Verify that reserved stock stays in the inventory but is no longer available
+	assertTrue(inventoryManager.reserve(cart, product1, 4, 60_000));
+	assertEquals(5, inventoryManager.getInventory().get("Product 1").getQuantity());
+	assertEquals(4, inventoryManager.getReservedQuantity(product1));
+	assertEquals(1, inventoryManager.getAvailableQuantity(product1));
+
+	// Verify that other carts and plain sales cannot take the reserved stock
+	assertFalse(inventoryManager.reserve(otherCart, product1, 2, 60_000));
+	assertFalse(inventoryManager.tryReduceQuantity(product1, 2));
+	otherCart.addProduct(product1, 2);
+	assertFalse(inventoryManager.processSale(otherCart));
+	assertTrue(inventoryManager.reserve(otherCart, product1, 1, 60_000));
+	assertEquals(0, inventoryManager.getAvailableQuantity(product1));
+
+	// Verify that releasing part of a reservation makes it available again
+	assertEquals(2, inventoryManager.releaseReservation(cart, product1, 2));
+	assertEquals(2, inventoryManager.getAvailableQuantity(product1));
+	inventoryManager.releaseReservations(cart);
+	inventoryManager.releaseReservations(otherCart);
+	assertEquals(0, inventoryManager.getReservedQuantity(product1));
+	assertEquals(5, inventoryManager.getAvailableQuantity(product1));
+	}
+
+	/**
+	 * Test case for reduceQuantity(SalableProduct, int) and patches leaving reserved stock in place.
+	 */
+	@Test
+	public void testReservedStockIsKept() throws IOException {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	ShoppingCart cart = new ShoppingCart();
+	assertTrue(inventoryManager.reserve(cart, product1, 3, 60_000));
+
+	// Verify that reducing takes only the unreserved stock and keeps the product
+	inventoryManager.reduceQuantity(product1, 10);
+	assertEquals(3, inventoryManager.getInventory().get("Product 1").getQuantity());
+	assertEquals(0, inventoryManager.getAvailableQuantity(product1));
+
+	// Verify that patches cannot set or adjust below the reservation, but can stay at or above it
+	for (String patch : new String[] {
+			"[{\"op\": \"set\", \"name\": \"Product 1\", \"quantity\": 2}]",
+			"[{\"op\": \"adjust\", \"name\": \"Product 1\", \"delta\": -1}]" }) {
+		try {
+			inventoryManager.applyPatch(InventoryPatch.parse(patch));
+			fail("Expected the patch to be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("reserved"));
+		}
+	}
+	assertEquals(1, inventoryManager.applyPatch(InventoryPatch.parse("[{\"op\": \"adjust\", \"name\": \"Product 1\", \"delta\": 2}]")));
+	assertEquals(5, inventoryManager.getInventory().get("Product 1").getQuantity());
+
+	// Verify that the reserved stock can still be sold to the cart
+	cart.addProduct(product1, 3);
+	assertTrue(inventoryManager.processSale(cart));
+	assertEquals(2, inventoryManager.getInventory().get("Product 1").getQuantity());
+	}
+
+	/**
+	 * Test case for setQuantity and replaceProduct keeping the stock reserved for carts.
+	 */
+	@Test
+	public void testSetAndReplaceKeepReservedStock() {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	ShoppingCart cart = new ShoppingCart();
+	assertTrue(inventoryManager.reserve(cart, product1, 3, 60_000));
+
+	// Verify that setting by name or on the stocked product cannot go below the reservation
+	try {
+		inventoryManager.setQuantity("Product 1", 2);
+		fail("Expected the quantity to be rejected");
+	}
+	catch (IllegalArgumentException e) {
+		assertTrue(e.getMessage().contains("reserved"));
+	}
+	SalableProduct stocked = inventoryManager.getInventory().get("Product 1");
+	try {
+		stocked.setQuantity(1);
+		fail("Expected the quantity to be rejected");
+	}
+	catch (IllegalArgumentException e) {
+		assertTrue(e.getMessage().contains("reserved"));
+	}
+	assertEquals(5, stocked.getQuantity());
+	assertTrue(inventoryManager.setQuantity("Product 1", 3));
+	assertEquals(3, inventoryManager.getInventory().get("Product 1").getQuantity());
+
+	// Verify that replacing the product, with the same or a new definition, keeps the reserved stock
+	assertFalse(inventoryManager.replaceProduct(new SalableProduct("Product 1", "Description 1", 10, 0), false));
+	assertEquals(3, inventoryManager.getInventory().get("Product 1").getQuantity());
+	assertTrue(inventoryManager.replaceProduct(new SalableProduct("Product 1", "New description", 12, 1), false));
+	assertEquals(3, inventoryManager.getInventory().get("Product 1").getQuantity());
+	assertEquals(0, inventoryManager.getAvailableQuantity(product1));
+
+	// Verify that the reservation survives the restock and can still be sold to the cart
+	cart.addProduct(product1, 3);
+	assertTrue(inventoryManager.processSale(cart));
+	assertNull(inventoryManager.getInventory().get("Product 1"));
+	}
+
+	/**
+	 * Test case for every inventory assigning its own SKU ids, and keeping them when products are removed.
+	 */
+	@Test
+	public void testSkuIdsArePerInventory() {
+	int registered = inventoryManager.getSkuCount();
+	InventoryManager other = new InventoryManager();
+	assertEquals(0, other.getSkuCount());
+
+	// Verify that stocking products in another inventory does not register them here
+	other.addProduct(new SalableProduct("Other 1", "Description 1", 10, 2));
+	other.addProduct(new SalableProduct("Other 2", "Description 2", 20, 4));
+	assertEquals(2, other.getSkuCount());
+	assertEquals(registered, inventoryManager.getSkuCount());
+	assertEquals(4, other.getInventory().get("Other 2").getQuantity());
+
+	// Verify that a removed product keeps its id when it is stocked again
+	other.removeProduct("Other 1");
+	other.addProduct(new SalableProduct("Other 1", "Description 1", 10, 7));
+	assertEquals(2, other.getSkuCount());
+	assertEquals(7, other.getInventory().get("Other 1").getQuantity());
+	assertEquals(4, other.getInventory().get("Other 2").getQuantity());
+	}
+
+	/**
+	 * Test case for processSale(ShoppingCart) turning a reservation into the sale.
+	 */
+	@Test
+	public void testProcessSaleWithReservation() {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	SalableProduct product2 = new SalableProduct("Product 2", "Description 2", 20, 3);
+	ShoppingCart cart = new ShoppingCart();
+	assertTrue(inventoryManager.reserve(cart, product1, 5, 60_000));
+	assertTrue(inventoryManager.reserve(cart, product2, 1, 60_000));
+	cart.addProduct(product1, 5);
+	cart.addProduct(product2, 2);
+
+	// Verify that the cart can buy its own reserved stock plus unreserved stock
+	assertTrue(inventoryManager.processSale(cart));
+	assertFalse(inventoryManager.getInventory().containsKey("Product 1"));
+	assertEquals(1, inventoryManager.getInventory().get("Product 2").getQuantity());
+	assertEquals(0, inventoryManager.getReservedQuantity(product1));
+	assertEquals(0, inventoryManager.getReservedQuantity(product2));
+	assertEquals(1, inventoryManager.getAvailableQuantity(product2));
+	}
+
+	/**
+	 * Test case for the releaseExpiredReservations(long) method.
+	 */
+	@Test
+	public void testReleaseExpiredReservations() {
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	SalableProduct product2 = new SalableProduct("Product 2", "Description 2", 20, 3);
+	ShoppingCart shortCart = new ShoppingCart();
+	ShoppingCart longCart = new ShoppingCart();
+	long now = System.currentTimeMillis();
+	assertTrue(inventoryManager.reserve(shortCart, product1, 2, 1_000));
+	assertTrue(inventoryManager.reserve(shortCart, product2, 3, 1_000));
+	assertTrue(inventoryManager.reserve(longCart, product1, 1, 60_000));
+
+	// Verify that nothing expires early
+	assertEquals(0, inventoryManager.releaseExpiredReservations(now));
+	assertEquals(3, inventoryManager.getReservedQuantity(product1));
+
+	// Verify that only the short reservation is released, as a whole
+	assertEquals(1, inventoryManager.releaseExpiredReservations(now + 30_000));
+	assertEquals(1, inventoryManager.getReservedQuantity(product1));
+	assertEquals(0, inventoryManager.getReservedQuantity(product2));
+
+	// Verify that a reservation extended by a later one is not released at its first deadline
+	assertTrue(inventoryManager.reserve(longCart, product2, 1, 120_000));
+	assertEquals(0, inventoryManager.releaseExpiredReservations(now + 90_000));
+	assertEquals(1, inventoryManager.getReservedQuantity(product1));
+	assertEquals(1, inventoryManager.getReservedQuantity(product2));
+	assertEquals(1, inventoryManager.releaseExpiredReservations(now + 200_000));
+	assertEquals(5, inventoryManager.getAvailableQuantity(product1));
+	assertEquals(3, inventoryManager.getAvailableQuantity(product2));
+	}
+
+}
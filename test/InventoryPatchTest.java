@@ -0,0 +1,203 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import storeapp.Armor;
+import storeapp.InventoryManager;
+import storeapp.InventoryPatch;
+import storeapp.InventorySnapshot;
+import storeapp.SalableProduct;
+
+/**
+ * A JUnit test class for the InventoryPatch class
+ * @author rargueta
+ *
+ */
+public class InventoryPatchTest {
+
+	private InventoryManager inventoryManager;
+
+	@Before
+	public void setUp() {
+		inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		inventoryManager.addProduct(new SalableProduct("Torch", null, 2, 3));
+	}
+
+	/**
+	 * Test case for parsing every kind of operation.
+	 */
+	@Test
+	public void testParse() throws IOException {
+		InventoryPatch patch = InventoryPatch.parse("[{\"op\": \"set\", \"name\": \"Rope\", \"quantity\": 4},"
+				+ " {\"op\": \"ADJUST\", \"name\": \"Torch\", \"delta\": -1},"
+				+ " {\"op\": \"upsert\", \"product\": {\"name\": \"Shield\", \"price\": 80, \"quantity\": 1, \"defense\": 30}},"
+				+ " {\"op\": \"delete\", \"name\": \"Torch\"}]");
+
+		assertEquals(4, patch.getOperations().size());
+		assertEquals(InventoryPatch.Type.SET, patch.getOperations().get(0).getType());
+		assertEquals(4, patch.getOperations().get(0).getAmount());
+		assertEquals(-1, patch.getOperations().get(1).getAmount());
+		assertEquals("Shield", patch.getOperations().get(2).getName());
+		assertTrue(patch.getOperations().get(2).getProduct() instanceof Armor);
+		assertEquals(InventoryPatch.Type.DELETE, patch.getOperations().get(3).getType());
+	}
+
+	/**
+	 * Test case for writing a patch in its binary form and reading it back.
+	 */
+	@Test
+	public void testBinaryForm() throws IOException {
+		InventoryPatch patch = InventoryPatch.of(Arrays.asList(
+				InventoryPatch.Operation.set("Rope", 4),
+				InventoryPatch.Operation.adjust("Torch", -1),
+				InventoryPatch.Operation.upsert(new Armor("Shield", null, 80, 1, 30)),
+				InventoryPatch.Operation.delete("Torch")));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		patch.write(new DataOutputStream(bytes));
+		InventoryPatch read = InventoryPatch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(4, read.getOperations().size());
+		assertEquals(InventoryPatch.Type.ADJUST, read.getOperations().get(1).getType());
+		assertEquals(-1, read.getOperations().get(1).getAmount());
+		assertEquals(30, ((Armor) read.getOperations().get(2).getProduct()).getDefense());
+		assertEquals(InventoryPatch.Type.DELETE, read.getOperations().get(3).getType());
+		assertEquals(4, inventoryManager.applyPatch(read));
+		assertEquals(4, inventoryManager.getProduct("Rope").getQuantity());
+		assertNull(inventoryManager.getProduct("Torch"));
+	}
+
+	/**
+	 * Test case for rejecting malformed patches.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseRejectsUnknownOperation() throws IOException {
+		InventoryPatch.parse("[{\"op\": \"rename\", \"name\": \"Rope\"}]");
+	}
+
+	/**
+	 * Test case for rejecting negative quantities, which would read as a product that is not stocked,
+	 * in both forms of a patch.
+	 */
+	@Test
+	public void testRejectsNegativeQuantities() throws IOException {
+		for (String json : new String[] {
+				"[{\"op\": \"set\", \"name\": \"Rope\", \"quantity\": -1}]",
+				"[{\"op\": \"upsert\", \"product\": {\"name\": \"Rope\", \"price\": 5, \"quantity\": -1}}]" }) {
+			try {
+				InventoryPatch.parse(json);
+				fail("Expected the patch to be rejected: " + json);
+			}
+			catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("Quantity cannot be negative"));
+			}
+		}
+
+		ByteArrayOutputStream set = new ByteArrayOutputStream();
+		DataOutputStream setOut = new DataOutputStream(set);
+		setOut.writeInt(1);
+		setOut.writeByte(InventoryPatch.Type.SET.ordinal());
+		setOut.writeUTF("Rope");
+		setOut.writeInt(-1);
+		ByteArrayOutputStream upsert = new ByteArrayOutputStream();
+		DataOutputStream upsertOut = new DataOutputStream(upsert);
+		upsertOut.writeInt(1);
+		upsertOut.writeByte(InventoryPatch.Type.UPSERT.ordinal());
+		InventorySnapshot.writeProduct(upsertOut, new SalableProduct("Rope", null, 5, -1));
+		for (ByteArrayOutputStream bytes : Arrays.asList(set, upsert)) {
+			try {
+				InventoryPatch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+				fail("Expected the patch to be rejected");
+			}
+			catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("Quantity cannot be negative"));
+			}
+		}
+
+		try {
+			InventoryPatch.Operation.upsert(new SalableProduct("Rope", null, 5, -1));
+			fail("Expected the operation to be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			// Patches built in code are held to the same rule
+		}
+		assertEquals(10, inventoryManager.getProduct("Rope").getQuantity());
+	}
+
+	/**
+	 * Test case for applying a patch.
+	 */
+	@Test
+	public void testApplyPatch() throws IOException {
+		int applied = inventoryManager.applyPatch(InventoryPatch.parse("[{\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": 5},"
+				+ " {\"op\": \"set\", \"name\": \"Torch\", \"quantity\": 0},"
+				+ " {\"op\": \"upsert\", \"product\": {\"name\": \"Shield\", \"price\": 80, \"quantity\": 1, \"defense\": 30}}]"));
+
+		assertEquals(3, applied);
+		assertEquals(15, inventoryManager.getProduct("Rope").getQuantity());
+		assertEquals(0, inventoryManager.getProduct("Torch").getQuantity());
+		assertEquals(30, ((Armor) inventoryManager.getProduct("Shield")).getDefense());
+	}
+
+	/**
+	 * Test case for a patch with an invalid operation leaving the inventory untouched.
+	 */
+	@Test
+	public void testApplyPatchIsAllOrNothing() throws IOException {
+		InventoryPatch patch = InventoryPatch.parse("[{\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": 5},"
+				+ " {\"op\": \"delete\", \"name\": \"Torch\"},"
+				+ " {\"op\": \"adjust\", \"name\": \"Torch\", \"delta\": 1}]");
+		try {
+			inventoryManager.applyPatch(patch);
+			fail("Expected the patch to be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			// Adjusting the deleted torch is not allowed
+		}
+
+		assertEquals(10, inventoryManager.getProduct("Rope").getQuantity());
+		assertEquals(3, inventoryManager.getProduct("Torch").getQuantity());
+	}
+
+	/**
+	 * Test case for patches naming products that were never stocked, which must not register their names.
+	 */
+	@Test
+	public void testApplyPatchDoesNotRegisterUnknownNames() throws IOException {
+		int registered = inventoryManager.getSkuCount();
+		String[] patches = {
+				"[{\"op\": \"delete\", \"name\": \"Unknown 1\"}]",
+				"[{\"op\": \"set\", \"name\": \"Unknown 2\", \"quantity\": 4}]",
+				"[{\"op\": \"upsert\", \"product\": {\"name\": \"Unknown 3\", \"price\": 1, \"quantity\": 1}},"
+						+ " {\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": -100}]" };
+		for (String patch : patches) {
+			try {
+				inventoryManager.applyPatch(InventoryPatch.parse(patch));
+				fail("Expected the patch to be rejected");
+			}
+			catch (IllegalArgumentException e) {
+				// Nothing named in the patch is stocked, or the patch cannot apply as a whole
+			}
+		}
+		assertEquals(registered, inventoryManager.getSkuCount());
+
+		// A product that is added, and one that is added and then changed in the same patch, do get ids
+		assertEquals(3, inventoryManager.applyPatch(InventoryPatch.parse(
+				"[{\"op\": \"upsert\", \"product\": {\"name\": \"Unknown 3\", \"price\": 1, \"quantity\": 1}},"
+						+ " {\"op\": \"adjust\", \"name\": \"Unknown 3\", \"delta\": 2},"
+						+ " {\"op\": \"adjust\", \"name\": \"Rope\", \"delta\": 1}]")));
+		assertEquals(registered + 1, inventoryManager.getSkuCount());
+		assertEquals(3, inventoryManager.getProduct("Unknown 3").getQuantity());
+		assertEquals(11, inventoryManager.getProduct("Rope").getQuantity());
+	}
+}
@@ -0,0 +1,149 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import storeapp.Armor;
+import storeapp.Health;
+import storeapp.InventoryManager;
+import storeapp.InventorySnapshot;
+import storeapp.SalableProduct;
+import storeapp.Weapon;
+
+/**
+ * A JUnit test class for the InventorySnapshot class
+ * @author rargueta
+ *
+ */
+public class InventorySnapshotTest {
+
+	private static final String SNAPSHOT_FILE = "inventorysnapshottest.snapshot";
+
+	/**
+	 * Deletes the snapshot file written by a test case.
+	 */
+	@After
+	public void tearDown() {
+		new File(SNAPSHOT_FILE).delete();
+	}
+
+	/**
+	 * Test case for writing a snapshot and reading it back.
+	 */
+	@Test
+	public void testWriteAndRead() throws IOException {
+		// Create an inventory with one product of every type
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new Weapon("Sword", "A sharp blade", 100, 2, 20));
+		inventoryManager.addProduct(new Armor("Boots", "Protective boots", 100, 5, 25));
+		inventoryManager.addProduct(new Health("Ginseng", "Boosts health", 50, 25, 15));
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		inventoryManager.reduceQuantity(new SalableProduct("Rope", null, 5, 10), 4);
+
+		InventorySnapshot.write(inventoryManager, SNAPSHOT_FILE);
+		InventoryManager loaded = InventoryManager.fromSnapshot(SNAPSHOT_FILE);
+
+		// Verify that every product kept its type, stats and current quantity
+		assertEquals(4, loaded.getInventory().size());
+		Weapon sword = (Weapon) loaded.getInventory().get("Sword");
+		assertEquals("A sharp blade", sword.getDescription());
+		assertEquals(100, sword.getPrice());
+		assertEquals(2, sword.getQuantity());
+		assertEquals(20, sword.getDamage());
+		assertEquals(25, ((Armor) loaded.getInventory().get("Boots")).getDefense());
+		assertEquals(15, ((Health) loaded.getInventory().get("Ginseng")).getHealthAmount());
+		SalableProduct rope = loaded.getInventory().get("Rope");
+		assertNull(rope.getDescription());
+		assertEquals(6, rope.getQuantity());
+	}
+
+	/**
+	 * Test case for an inventory that memory-maps a snapshot and loads products on first use.
+	 */
+	@Test
+	public void testMapSnapshot() throws IOException {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new Weapon("Sword", "A sharp blade", 100, 2, 20));
+		inventoryManager.addProduct(new Armor("Boots", "Protective boots", 100, 5, 25));
+		inventoryManager.addProduct(new Health("Ginseng", "Boosts health", 50, 25, 15));
+		InventorySnapshot.write(inventoryManager, SNAPSHOT_FILE);
+
+		InventoryManager mapped = InventoryManager.mapSnapshot(SNAPSHOT_FILE);
+
+		// Verify that a lookup decodes the product from the mapped file
+		Weapon sword = (Weapon) mapped.findProduct("sword");
+		assertEquals(20, sword.getDamage());
+		assertSame(sword, mapped.findProduct("SWORD"));
+
+		// Verify that mutations of products not used yet load them first
+		mapped.reduceQuantity(new SalableProduct("Boots", null, 0, 0), 2);
+		mapped.removeProduct("Ginseng");
+		assertNull(mapped.findProduct("ginseng"));
+
+		// Verify that the full inventory reflects both the mapped values and the changes
+		assertEquals(2, mapped.getInventory().size());
+		assertEquals(2, mapped.getInventory().get("Sword").getQuantity());
+		assertEquals(3, mapped.getInventory().get("Boots").getQuantity());
+	}
+
+	/**
+	 * Test case for mapping a snapshot whose product names differ only in case, which the inventory keeps apart.
+	 */
+	@Test
+	public void testMapSnapshotWithNamesDifferingInCase() throws IOException {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		inventoryManager.addProduct(new SalableProduct("ROPE", null, 6, 20));
+		InventorySnapshot.write(inventoryManager, SNAPSHOT_FILE);
+
+		// Verify that exact lookups find each product, and a lookup ignoring case finds one of them
+		InventoryManager mapped = InventoryManager.mapSnapshot(SNAPSHOT_FILE);
+		assertEquals(20, mapped.getProduct("ROPE").getQuantity());
+		assertEquals(10, mapped.getProduct("Rope").getQuantity());
+		assertNotNull(mapped.findProduct("rope"));
+
+		// Verify that removing one leaves the other, and that nothing was lost while mapped
+		mapped = InventoryManager.mapSnapshot(SNAPSHOT_FILE);
+		mapped.removeProduct("Rope");
+		assertEquals(1, mapped.getInventory().size());
+		assertEquals(20, mapped.getInventory().get("ROPE").getQuantity());
+	}
+
+	/**
+	 * Test case for reading a file that is not a snapshot.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadRejectsOtherFiles() throws IOException {
+		try (FileWriter writer = new FileWriter(SNAPSHOT_FILE)) {
+			writer.write("{\"Product 1\":{}}");
+		}
+		InventoryManager.fromSnapshot(SNAPSHOT_FILE);
+	}
+
+	/**
+	 * Test case for reading a snapshot that ends inside a record of a type written by a newer version.
+	 */
+	@Test(expected = EOFException.class)
+	public void testReadRejectsTruncatedUnknownRecord() throws IOException {
+		InventoryManager inventoryManager = new InventoryManager();
+		inventoryManager.addProduct(new SalableProduct("Rope", null, 5, 10));
+		InventorySnapshot.write(inventoryManager, SNAPSHOT_FILE);
+
+		// Append a record of an unknown type that claims more bytes than the file holds
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(SNAPSHOT_FILE, true))) {
+			out.writeInt(100);
+			out.writeByte(42);
+			out.write(new byte[10]);
+		}
+		InventoryManager.fromSnapshot(SNAPSHOT_FILE);
+	}
+}
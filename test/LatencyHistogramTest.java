@@ -0,0 +1,70 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import adminapp.LatencyHistogram;
+
+/**
+ * A JUnit test class for the LatencyHistogram class
+ * @author rargueta
+ *
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * Test case for an empty histogram.
+	 */
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(0.99));
+		assertEquals(0, histogram.getMax());
+	}
+
+	/**
+	 * Test case for percentiles staying within the histogram's precision.
+	 */
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 100_000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(100_000, histogram.getCount());
+		assertEquals(100_000_000L, histogram.getMax());
+		assertWithin(50_000_000L, histogram.getPercentile(0.5));
+		assertWithin(99_000_000L, histogram.getPercentile(0.99));
+		assertWithin(99_900_000L, histogram.getPercentile(0.999));
+		assertEquals(100_000_000L, histogram.getPercentile(1.0));
+	}
+
+	/**
+	 * Test case for small values being counted exactly and negative values as zero.
+	 */
+	@Test
+	public void testSmallValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(3);
+		histogram.record(3);
+		histogram.record(7);
+		assertEquals(0, histogram.getPercentile(0.25));
+		assertEquals(3, histogram.getPercentile(0.5));
+		assertEquals(7, histogram.getPercentile(1.0));
+		assertEquals(13, histogram.getTotal());
+	}
+
+	/**
+	 * Checks that a percentile is no lower than the exact value and at most one bucket (1/16) above it.
+	 *
+	 * @param expected the exact value
+	 * @param actual the value reported by the histogram
+	 */
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual + " < " + expected, actual >= expected);
+		assertTrue(actual + " too far above " + expected, actual <= expected + expected / 16);
+	}
+}
@@ -2,7 +2,10 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 import storeapp.ShoppingCart;
@@ -46,7 +49,7 @@ public class ShoppingCartTest {
 	cart.addProduct(product, 2);
 
 	// Verify that the product is added to the cart with the correct quantity
-	HashMap<SalableProduct, Integer> products = cart.getProducts();
+	Map<SalableProduct, Integer> products = cart.getProducts();
 	assertTrue(products.containsKey(product));
 	assertEquals(2, (int) products.get(product));
 
@@ -76,7 +79,7 @@ public class ShoppingCartTest {
 	cart.removeProduct(product, 3);
 
 	// Verify that the quantity is updated correctly
-	HashMap<SalableProduct, Integer> products = cart.getProducts();
+	Map<SalableProduct, Integer> products = cart.getProducts();
 	assertEquals(2, (int) products.get(product));
 
 	// Remove the remaining quantity of the product from the cart
@@ -107,7 +110,7 @@ public class ShoppingCartTest {
 	cart.addProduct(product2, 4);
 
 	// Verify that the map of products is returned correctly
-	HashMap<SalableProduct, Integer> products = cart.getProducts();
+	Map<SalableProduct, Integer> products = cart.getProducts();
 	assertEquals(2, products.size());
 	assertTrue(products.containsKey(product1));
 	assertTrue(products.containsKey(product2));
@@ -117,6 +120,27 @@ public class ShoppingCartTest {
 	
 	/**
 
+	Test case for the findProduct(String) method.
+	*/
+	@Test
+	public void testFindProduct() {
+	// Create a new ShoppingCart object with one product
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct product = new SalableProduct("Product", "Description", 10, 5);
+	cart.addProduct(product, 2);
+
+	// Verify that the product is found regardless of case
+	assertSame(product, cart.findProduct("product"));
+	assertSame(product, cart.findProduct("PRODUCT"));
+	assertNull(cart.findProduct("other"));
+
+	// Verify that the product can no longer be found once it is removed
+	cart.removeProduct(product, 2);
+	assertNull(cart.findProduct("product"));
+	}
+	
+	/**
+
 	Test case for the clear() method.
 	*/
 	@Test
@@ -136,4 +160,149 @@ public class ShoppingCartTest {
 	// Verify that the cart is empty
 	assertTrue(cart.getProducts().isEmpty());
 	}
+	/**
+
+	Test case for adding two instances of the same product.
+	*/
+	@Test
+	public void testSameProductSharesLine() {
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct product = new SalableProduct("Shared Product", "Description", 10, 5);
+	SalableProduct sameName = new SalableProduct("Shared Product", "Description", 10, 5);
+
+	// Verify that both instances end up on one line
+	cart.addProduct(product, 2);
+	cart.addProduct(sameName, 3);
+	assertEquals(1, cart.size());
+	assertEquals(5, cart.getQuantity(product));
+	assertEquals(5, (int) cart.getProducts().get(sameName));
+
+	// Verify that either instance removes from that line
+	cart.removeProduct(sameName, 5);
+	assertTrue(cart.isEmpty());
+	}
+
+	/**
+
+	Test case for the forEach(LineConsumer) method.
+	*/
+	@Test
+	public void testForEach() {
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct product1 = new SalableProduct("Product 1", "Description 1", 10, 5);
+	SalableProduct product2 = new SalableProduct("Product 2", "Description 2", 20, 3);
+	cart.addProduct(product1, 2);
+	cart.addProduct(product2, 4);
+
+	// Verify that every line is visited once with its quantity
+	Map<SalableProduct, Integer> visited = new HashMap<>();
+	cart.forEach((product, quantity) -> assertNull(visited.put(product, quantity)));
+	assertEquals(2, visited.size());
+	assertEquals(2, (int) visited.get(product1));
+	assertEquals(4, (int) visited.get(product2));
+	}
+
+	/**
+
+	Test case for a cart that grows and shrinks, checked against a HashMap.
+	*/
+	@Test
+	public void testManyProducts() {
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct[] products = new SalableProduct[200];
+	for (int i = 0; i < products.length; i++) {
+		products[i] = new SalableProduct("Cart Product " + i, "Description", 10, 5);
+	}
+
+	// Random adds and removes must leave the cart matching the reference map
+	Map<SalableProduct, Integer> expected = new HashMap<>();
+	Random random = new Random(3);
+	for (int i = 0; i < 20_000; i++) {
+		SalableProduct product = products[random.nextInt(products.length)];
+		int quantity = 1 + random.nextInt(3);
+		if (random.nextBoolean()) {
+			cart.addProduct(product, quantity);
+			expected.merge(product, quantity, Integer::sum);
+		}
+		else {
+			cart.removeProduct(product, quantity);
+			expected.computeIfPresent(product, (key, current) -> current > quantity ? current - quantity : null);
+		}
+	}
+	assertEquals(expected.size(), cart.size());
+	for (SalableProduct product : products) {
+		assertEquals((int) expected.getOrDefault(product, 0), cart.getQuantity(product));
+		assertSame(expected.containsKey(product) ? product : null, cart.findProduct(product.getName().toUpperCase()));
+	}
+	assertEquals(expected, new HashMap<>(cart.getProducts()));
+	}
+
+	/**
+	 * Test case for findProduct(String) with products whose names differ only in case.
+	 */
+	@Test
+	public void testFindProductWithNamesDifferingInCase() {
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct rope = new SalableProduct("Rope", "Description", 10, 5);
+	SalableProduct upperRope = new SalableProduct("ROPE", "Description", 10, 5);
+	cart.addProduct(rope, 1);
+	cart.addProduct(upperRope, 2);
+
+	// Verify that both are separate lines and exact names are preferred
+	assertEquals(2, cart.size());
+	assertSame(rope, cart.findProduct("Rope"));
+	assertSame(upperRope, cart.findProduct("ROPE"));
+	assertNotNull(cart.findProduct("rope"));
+
+	// Verify that the other line is still found once one of them is removed
+	cart.removeProduct(rope, 1);
+	assertSame(upperRope, cart.findProduct("rope"));
+	assertSame(upperRope, cart.findProduct("Rope"));
+	}
+
+	/**
+	 * Test case for adding, removing and finding lines without allocating, once the table has grown.
+	 */
+	@Test
+	public void testNoAllocation() {
+	if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+		return;
+	}
+	com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	ShoppingCart cart = new ShoppingCart();
+	SalableProduct[] products = new SalableProduct[8];
+	String[] upperNames = new String[products.length];
+	for (int i = 0; i < products.length; i++) {
+		products[i] = new SalableProduct("Product " + i, "Description", 10, 5);
+		upperNames[i] = products[i].getName().toUpperCase();
+		cart.addProduct(products[i], 1);
+	}
+	churn(cart, products, upperNames);
+
+	long thread = Thread.currentThread().getId();
+	long before = threads.getThreadAllocatedBytes(thread);
+	churn(cart, products, upperNames);
+	long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+	// Leave room for the measurement itself, but not for anything per operation
+	assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+	}
+
+	/**
+	 * Removes and adds every line of a cart, and finds it by name in another case, many times over.
+	 *
+	 * @param cart the cart
+	 * @param products the products in the cart
+	 * @param upperNames the names of the products in upper case
+	 */
+	private static void churn(ShoppingCart cart, SalableProduct[] products, String[] upperNames) {
+	for (int round = 0; round < 10_000; round++) {
+		int index = round % products.length;
+		cart.removeProduct(products[index], 1);
+		cart.addProduct(products[index], 1);
+		if (cart.findProduct(upperNames[index]) != products[index]) {
+			fail("Lost " + upperNames[index]);
+		}
+	}
+	}
 }
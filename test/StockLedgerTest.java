@@ -0,0 +1,85 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import storeapp.StockLedger;
+
+/**
+ * A JUnit test class for the StockLedger class
+ * @author rargueta
+ *
+ */
+public class StockLedgerTest {
+
+	private StockLedger ledger;
+
+	/**
+	 * Creates an empty ledger for each test case.
+	 */
+	@Before
+	public void setUp() {
+		ledger = new StockLedger();
+	}
+
+	/**
+	 * Test case for the get(int) method on SKUs that were never stocked.
+	 */
+	@Test
+	public void testGetAbsent() {
+		// Verify that unknown SKUs are reported as absent, even beyond the allocated segments
+		assertEquals(StockLedger.ABSENT, ledger.get(0));
+		assertEquals(StockLedger.ABSENT, ledger.get(1_000_000));
+	}
+
+	/**
+	 * Test case for the set(int, int) and add(int, int) methods.
+	 */
+	@Test
+	public void testSetAndAdd() {
+		ledger.set(7, 10);
+		assertEquals(10, ledger.get(7));
+
+		// Verify that adding a positive and a negative amount updates the stock
+		assertEquals(15, ledger.add(7, 5));
+		assertEquals(12, ledger.add(7, -3));
+		assertEquals(12, ledger.get(7));
+
+		// Verify that neighbouring SKUs are untouched
+		assertEquals(StockLedger.ABSENT, ledger.get(6));
+		assertEquals(StockLedger.ABSENT, ledger.get(8));
+	}
+
+	/**
+	 * Test case for SKU ids spread over several segments.
+	 */
+	@Test
+	public void testGrowth() {
+		// Write SKUs far apart so that the ledger has to grow several times
+		for (int skuId = 0; skuId < 100_000; skuId += 997) {
+			ledger.set(skuId, skuId % 50);
+		}
+
+		// Verify that earlier values survive the growth
+		for (int skuId = 0; skuId < 100_000; skuId += 997) {
+			assertEquals(skuId % 50, ledger.get(skuId));
+		}
+	}
+
+	/**
+	 * Test case for the clear() method.
+	 */
+	@Test
+	public void testClear() {
+		ledger.set(3, 4);
+		ledger.set(5000, 6);
+
+		ledger.clear();
+
+		// Verify that every SKU is absent again
+		assertEquals(StockLedger.ABSENT, ledger.get(3));
+		assertEquals(StockLedger.ABSENT, ledger.get(5000));
+	}
+}
@@ -101,4 +101,28 @@ public class StoreFrontTest {
         assertEquals(5, inventoryManager.getInventory().get(product1.getName()).getQuantity());
         assertEquals(2, inventoryManager.getInventory().get(product2.getName()).getQuantity());
     }
+
+    /**
+     * Test the processCancel method of StoreFront after a reservation.
+     * Reserves stock for a cart and cancels the sale.
+     * Asserts that the stock is unchanged and available to other carts again.
+     */
+    @Test
+    public void testProcessCancelReleasesReservation() {
+        InventoryManager inventoryManager = store.getInventoryManager();
+
+        SalableProduct product1 = new SalableProduct("Product1", "Description1", 10, 5);
+        inventoryManager.addProduct(product1);
+        int stocked = inventoryManager.getInventory().get(product1.getName()).getQuantity();
+
+        ShoppingCart cart = new ShoppingCart();
+        assertTrue(store.reserve(cart, product1, 2));
+        cart.addProduct(product1, 2);
+        assertEquals(stocked - 2, inventoryManager.getAvailableQuantity(product1));
+
+        store.processCancel(cart);
+
+        assertEquals(stocked, inventoryManager.getInventory().get(product1.getName()).getQuantity());
+        assertEquals(stocked, inventoryManager.getAvailableQuantity(product1));
+    }
 }